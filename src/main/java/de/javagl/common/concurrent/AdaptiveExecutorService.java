@@ -0,0 +1,416 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <code>ThreadPoolExecutor</code> that adjusts its pool size between
+ * a minimum and a maximum, based on the queue wait times and the 
+ * CPU utilization of its tasks.<br>
+ * <br>
+ * The executor measures the time that tasks spend in the queue, and
+ * the fraction of the execution time that the tasks spend on the CPU 
+ * (as opposed to being blocked, for example, in I/O operations). At 
+ * regular intervals, these measurements are evaluated, either by a 
+ * thread that submits a task, or by a worker thread after it finished 
+ * a task. There is no additional thread for monitoring the executor.<br>
+ * <br>
+ * The queue wait time also takes into account how long the oldest 
+ * task in the queue has already been waiting. When no task finished
+ * during an interval, then the CPU utilization is estimated from the 
+ * tasks that are currently running. So the pool size can also grow 
+ * when all workers are blocked in long-running tasks.
+ * <ul>
+ *   <li>
+ *     When the average queue wait time exceeds the target wait time, 
+ *     and the pool size is smaller than the size that is suggested 
+ *     by the CPU utilization (namely, the number of processors divided 
+ *     by the fraction of the execution time that is spent on the CPU),
+ *     then the pool size is increased.
+ *   </li>
+ *   <li>
+ *     When the average queue wait time is well below the target wait
+ *     time, and not all threads are busy, then the pool size is 
+ *     decreased.
+ *   </li>
+ * </ul>
+ * So for CPU-bound tasks, the pool size will not grow much beyond the 
+ * number of processors, even if tasks have to wait in the queue, 
+ * whereas for tasks that are mostly blocked, the pool size may grow up 
+ * to the maximum.<br>
+ * <br>
+ * Note that the tasks that are passed to the <code>execute</code> method 
+ * will be wrapped internally, in order to record the time when they
+ * have been submitted. So these tasks will not appear in the queue of
+ * this executor.<br>
+ * <br>
+ * Instances of this class may be created with 
+ * {@link ExecutorServices#createAdaptiveExecutorService(int, int, long, 
+ * TimeUnit, long, TimeUnit)}.
+ */
+public class AdaptiveExecutorService extends ThreadPoolExecutor
+{
+    /**
+     * The interval in which the pool size is adjusted, in nanoseconds
+     */
+    private static final long ADJUSTMENT_INTERVAL_NANOS = 
+        TimeUnit.MILLISECONDS.toNanos(100);
+    
+    /**
+     * The minimum pool size
+     */
+    private final int minPoolSize;
+    
+    /**
+     * The maximum pool size
+     */
+    private final int maxPoolSize;
+    
+    /**
+     * The target queue wait time, in nanoseconds
+     */
+    private final long targetQueueWaitNanos;
+    
+    /**
+     * The thread MX bean that is used for measuring the CPU time, or 
+     * <code>null</code> if measuring the CPU time is not supported
+     */
+    private final ThreadMXBean threadMXBean;
+    
+    /**
+     * The sum of the queue wait times in the current interval
+     */
+    private final LongAdder queueWaitNanos;
+    
+    /**
+     * The number of tasks that have been started in the current interval
+     */
+    private final LongAdder startedTasks;
+    
+    /**
+     * The sum of the execution times in the current interval
+     */
+    private final LongAdder executionNanos;
+    
+    /**
+     * The sum of the CPU times in the current interval
+     */
+    private final LongAdder cpuNanos;
+    
+    /**
+     * The tasks that are currently being executed
+     */
+    private final Set<TimedRunnable> runningTasks;
+    
+    /**
+     * Whether the CPU time of other threads can be measured, to estimate
+     * the CPU utilization of the running tasks
+     */
+    private final boolean threadCpuTimeSupported;
+    
+    /**
+     * The time of the last adjustment, in nanoseconds
+     */
+    private final AtomicLong lastAdjustmentNanos;
+    
+    /**
+     * The average queue wait time in the last interval, in nanoseconds
+     */
+    private volatile long averageQueueWaitNanos;
+    
+    /**
+     * The fraction of the execution time that was spent on the CPU,
+     * in the last interval
+     */
+    private volatile double cpuUtilization;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param minPoolSize The minimum pool size
+     * @param maxPoolSize The maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @param targetQueueWaitTime The target queue wait time
+     * @param targetQueueWaitTimeUnit The unit of the target queue wait time
+     * @throws IllegalArgumentException If the minimum pool size is not 
+     * positive, or larger than the maximum pool size
+     */
+    public AdaptiveExecutorService(
+        int minPoolSize, int maxPoolSize, 
+        long keepAliveTime, TimeUnit timeUnit,
+        long targetQueueWaitTime, TimeUnit targetQueueWaitTimeUnit)
+    {
+        super(minPoolSize, maxPoolSize, keepAliveTime, timeUnit, 
+            new LinkedBlockingQueue<Runnable>());
+        if (minPoolSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The minimum pool size must be positive, but is " 
+                + minPoolSize);
+        }
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.targetQueueWaitNanos = 
+            targetQueueWaitTimeUnit.toNanos(targetQueueWaitTime);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean.isCurrentThreadCpuTimeSupported() && 
+            bean.isThreadCpuTimeEnabled())
+        {
+            this.threadMXBean = bean;
+        }
+        else
+        {
+            this.threadMXBean = null;
+        }
+        this.queueWaitNanos = new LongAdder();
+        this.startedTasks = new LongAdder();
+        this.executionNanos = new LongAdder();
+        this.cpuNanos = new LongAdder();
+        this.runningTasks = ConcurrentHashMap.newKeySet();
+        this.threadCpuTimeSupported = 
+            threadMXBean != null && threadMXBean.isThreadCpuTimeSupported();
+        this.lastAdjustmentNanos = new AtomicLong(System.nanoTime());
+        this.cpuUtilization = 1.0;
+    }
+    
+    /**
+     * Returns the average queue wait time that was measured in the 
+     * last adjustment interval, in nanoseconds
+     * 
+     * @return The average queue wait time
+     */
+    public long getAverageQueueWaitNanos()
+    {
+        return averageQueueWaitNanos;
+    }
+    
+    /**
+     * Returns the fraction of the execution time that the tasks spent 
+     * on the CPU, in the last adjustment interval. If the CPU time can 
+     * not be measured, then this will always be 1.0.
+     * 
+     * @return The CPU utilization, in [0,1]
+     */
+    public double getCpuUtilization()
+    {
+        return cpuUtilization;
+    }
+    
+    @Override
+    public void execute(Runnable command)
+    {
+        if (command == null)
+        {
+            throw new NullPointerException();
+        }
+        TimedRunnable timedRunnable = new TimedRunnable(command);
+        super.execute(timedRunnable);
+        
+        // When all workers are blocked, then no task will finish that
+        // could trigger the adjustment
+        adjustPoolSizeIfDue(timedRunnable.submitNanos);
+    }
+    
+    @Override
+    protected void beforeExecute(Thread t, Runnable r)
+    {
+        super.beforeExecute(t, r);
+        if (r instanceof TimedRunnable)
+        {
+            TimedRunnable timedRunnable = (TimedRunnable) r;
+            timedRunnable.startNanos = System.nanoTime();
+            timedRunnable.threadId = t.getId();
+            if (threadMXBean != null)
+            {
+                timedRunnable.startCpuNanos = 
+                    threadMXBean.getCurrentThreadCpuTime();
+            }
+            runningTasks.add(timedRunnable);
+            queueWaitNanos.add(
+                timedRunnable.startNanos - timedRunnable.submitNanos);
+            startedTasks.increment();
+        }
+    }
+    
+    @Override
+    protected void afterExecute(Runnable r, Throwable t)
+    {
+        super.afterExecute(r, t);
+        long now = System.nanoTime();
+        if (r instanceof TimedRunnable)
+        {
+            TimedRunnable timedRunnable = (TimedRunnable) r;
+            runningTasks.remove(timedRunnable);
+            executionNanos.add(now - timedRunnable.startNanos);
+            if (timedRunnable.startCpuNanos >= 0)
+            {
+                cpuNanos.add(threadMXBean.getCurrentThreadCpuTime() 
+                    - timedRunnable.startCpuNanos);
+            }
+        }
+        adjustPoolSizeIfDue(now);
+    }
+    
+    /**
+     * Adjust the pool size if the current adjustment interval has ended
+     * 
+     * @param now The current time, in nanoseconds
+     */
+    private void adjustPoolSizeIfDue(long now)
+    {
+        long last = lastAdjustmentNanos.get();
+        if (now - last >= ADJUSTMENT_INTERVAL_NANOS && 
+            lastAdjustmentNanos.compareAndSet(last, now))
+        {
+            adjustPoolSize(now);
+        }
+    }
+    
+    /**
+     * Evaluate the measurements of the current interval, adjust the pool 
+     * size accordingly, and start a new interval
+     * 
+     * @param now The current time, in nanoseconds
+     */
+    private void adjustPoolSize(long now)
+    {
+        long started = startedTasks.sumThenReset();
+        long waitNanos = queueWaitNanos.sumThenReset();
+        long execNanos = executionNanos.sumThenReset();
+        long cpu = cpuNanos.sumThenReset();
+        long oldestWaitNanos = computeOldestQueueWaitNanos(now);
+        if (started == 0 && oldestWaitNanos == 0)
+        {
+            return;
+        }
+        long averageWaitNanos = started == 0 ? 0 : waitNanos / started;
+        averageWaitNanos = Math.max(averageWaitNanos, oldestWaitNanos);
+        double utilization = cpuUtilization;
+        if (threadMXBean != null && execNanos > 0)
+        {
+            utilization = Math.max(0.0, Math.min(1.0, 
+                (double) cpu / execNanos));
+        }
+        else if (threadCpuTimeSupported)
+        {
+            utilization = estimateRunningCpuUtilization(now, utilization);
+        }
+        this.averageQueueWaitNanos = averageWaitNanos;
+        this.cpuUtilization = utilization;
+        
+        int processors = Runtime.getRuntime().availableProcessors();
+        double suggestedPoolSize = 
+            processors / Math.max(utilization, 1.0 / maxPoolSize);
+        int poolSize = getCorePoolSize();
+        int newPoolSize = poolSize;
+        if (averageWaitNanos > targetQueueWaitNanos)
+        {
+            if (poolSize < suggestedPoolSize)
+            {
+                newPoolSize = poolSize + Math.max(1, poolSize / 4);
+            }
+        }
+        else if (averageWaitNanos < targetQueueWaitNanos / 4)
+        {
+            if (getActiveCount() < poolSize && getQueue().isEmpty())
+            {
+                newPoolSize = poolSize - 1;
+            }
+        }
+        newPoolSize = 
+            Math.max(minPoolSize, Math.min(maxPoolSize, newPoolSize));
+        if (newPoolSize != poolSize)
+        {
+            setCorePoolSize(newPoolSize);
+        }
+    }
+    
+    /**
+     * Returns the time that the task at the head of the queue has 
+     * already been waiting, in nanoseconds, or 0 if the queue is empty
+     * 
+     * @param now The current time, in nanoseconds
+     * @return The wait time
+     */
+    private long computeOldestQueueWaitNanos(long now)
+    {
+        Runnable head = getQueue().peek();
+        if (head instanceof TimedRunnable)
+        {
+            TimedRunnable timedRunnable = (TimedRunnable) head;
+            return Math.max(0, now - timedRunnable.submitNanos);
+        }
+        return 0;
+    }
+    
+    /**
+     * Estimate the fraction of the execution time that the currently 
+     * running tasks spent on the CPU so far. If this can not be 
+     * estimated, then the given default value is returned.
+     * 
+     * @param now The current time, in nanoseconds
+     * @param defaultUtilization The default utilization
+     * @return The CPU utilization, in [0,1]
+     */
+    private double estimateRunningCpuUtilization(
+        long now, double defaultUtilization)
+    {
+        long execNanos = 0;
+        long cpu = 0;
+        for (TimedRunnable timedRunnable : runningTasks)
+        {
+            long startCpuNanos = timedRunnable.startCpuNanos;
+            if (startCpuNanos < 0)
+            {
+                continue;
+            }
+            long threadCpuNanos = 
+                threadMXBean.getThreadCpuTime(timedRunnable.threadId);
+            if (threadCpuNanos < 0)
+            {
+                continue;
+            }
+            execNanos += now - timedRunnable.startNanos;
+            cpu += threadCpuNanos - startCpuNanos;
+        }
+        if (execNanos <= 0)
+        {
+            return defaultUtilization;
+        }
+        return Math.max(0.0, Math.min(1.0, (double) cpu / execNanos));
+    }
+}
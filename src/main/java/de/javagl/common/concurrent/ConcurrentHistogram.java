@@ -0,0 +1,186 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram for non-negative <code>long</code> values (for example, 
+ * durations in nanoseconds), that may be updated by multiple threads
+ * concurrently.<br>
+ * <br>
+ * The values are counted in buckets, with a log-linear bucket layout
+ * similar to that of an HDR histogram: Values smaller than 
+ * {@value #SUB_BUCKET_COUNT} are counted exactly. Larger values are 
+ * counted in buckets whose size is proportional to the magnitude of
+ * the values, so that the relative error of a value that is obtained 
+ * from a {@link HistogramSnapshot} is at most 
+ * <code>1/{@value #SUB_BUCKET_COUNT}</code>.
+ */
+final class ConcurrentHistogram
+{
+    /**
+     * The number of bits that are used for the sub-buckets
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    
+    /**
+     * The number of sub-buckets for each power of two
+     */
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    /**
+     * The total number of buckets, covering all non-negative long values
+     */
+    private static final int BUCKET_COUNT = 
+        SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    
+    /**
+     * The counts for the buckets
+     */
+    private final AtomicLongArray counts;
+    
+    /**
+     * The total number of recorded values
+     */
+    private final LongAdder totalCount;
+    
+    /**
+     * The sum of all recorded values
+     */
+    private final LongAdder totalSum;
+    
+    /**
+     * The minimum recorded value
+     */
+    private final AtomicLong min;
+    
+    /**
+     * The maximum recorded value
+     */
+    private final AtomicLong max;
+    
+    /**
+     * Creates a new, empty histogram
+     */
+    ConcurrentHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new LongAdder();
+        this.totalSum = new LongAdder();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong(Long.MIN_VALUE);
+    }
+    
+    /**
+     * Record the given value. Negative values will be recorded as 0.
+     * 
+     * @param value The value
+     */
+    void record(long value)
+    {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(v));
+        totalCount.increment();
+        totalSum.add(v);
+        long currentMin = min.get();
+        while (v < currentMin && !min.compareAndSet(currentMin, v))
+        {
+            currentMin = min.get();
+        }
+        long currentMax = max.get();
+        while (v > currentMax && !max.compareAndSet(currentMax, v))
+        {
+            currentMax = max.get();
+        }
+    }
+    
+    /**
+     * Create a snapshot of the current state of this histogram. If the 
+     * histogram is updated while the snapshot is created, then the 
+     * snapshot may not reflect all updates, but it will always be 
+     * consistent in itself.
+     * 
+     * @return The {@link HistogramSnapshot}
+     */
+    HistogramSnapshot snapshot()
+    {
+        long snapshotCounts[] = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshotCounts[i] = counts.get(i);
+            count += snapshotCounts[i];
+        }
+        if (count == 0)
+        {
+            return new HistogramSnapshot(snapshotCounts, 0, 0, 0, 0.0);
+        }
+        double mean = (double) totalSum.sum() / totalCount.sum();
+        return new HistogramSnapshot(snapshotCounts, count, 
+            Math.max(0, min.get()), Math.max(0, max.get()), mean);
+    }
+    
+    /**
+     * Returns the index of the bucket for the given non-negative value
+     * 
+     * @param value The value
+     * @return The bucket index
+     */
+    static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+    
+    /**
+     * Returns the largest value that is counted in the bucket with
+     * the given index
+     * 
+     * @param index The bucket index
+     * @return The largest value
+     */
+    static long highestValueInBucket(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+}
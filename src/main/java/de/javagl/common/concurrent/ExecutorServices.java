@@ -26,13 +26,19 @@
  */
 package de.javagl.common.concurrent;
 
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 
@@ -41,6 +47,24 @@ import java.util.concurrent.TimeUnit;
  */
 public class ExecutorServices
 {
+    /**
+     * The policies for the behavior of a bounded executor service when
+     * a task is submitted while its queue is full
+     */
+    public static enum BackpressurePolicy
+    {
+        /**
+         * The submitting thread is blocked until there is space in the
+         * queue
+         */
+        BLOCK,
+        
+        /**
+         * The submitting thread executes the task itself
+         */
+        CALLER_RUNS
+    }
+    
     /**
      * Creates an executor service with a fixed pool size, that will time 
      * out after a certain period of inactivity.<br>
@@ -67,42 +91,306 @@ public class ExecutorServices
             protected void afterExecute(Runnable r, Throwable t)
             {
                 super.afterExecute(r, t);
-                if (t == null && r instanceof Future<?>)
+                Throwable throwable = 
+                    obtainThrowable(r, t, rethrowCancellation);
+                if (throwable != null)
                 {
-                    try
+                    throw new RuntimeException(throwable);
+                }
+            }
+        };
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+    
+    /**
+     * Creates an executor service with a fixed pool size, that will time 
+     * out after a certain period of inactivity.<br>
+     * <br>
+     * Exceptions that happen in any of the tasks that are executed
+     * will be passed to the given failure handler. In contrast to 
+     * {@link #createFixedTimeoutRethrowingExecutorService(int, long, 
+     * TimeUnit, boolean)}, the exceptions will not be re-thrown, so 
+     * they do not cause the worker threads to terminate.<br>
+     * <br>
+     * The failure handler will be called by the worker thread that
+     * executed the task. It should not throw exceptions. If it does,
+     * then these exceptions will be passed to the uncaught exception
+     * handler of the worker thread, but will not cause the worker
+     * thread to terminate either.<br>
+     * <br>
+     * Note that tasks that are passed to the <code>execute</code> method 
+     * of the returned executor service will be wrapped internally, in
+     * order to catch their exceptions. So these tasks will not appear 
+     * in the queue of the executor service. 
+     * 
+     * @param poolSize The core- and maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @param reportCancellation Whether CancellationExceptions should
+     * also be passed to the failure handler
+     * @param failureHandler The consumer for the exceptions
+     * @return The executor service
+     * @throws NullPointerException If the failure handler is 
+     * <code>null</code>
+     */
+    public static ExecutorService createFixedTimeoutReportingExecutorService(
+        int poolSize, long keepAliveTime, TimeUnit timeUnit, 
+        final boolean reportCancellation, 
+        final Consumer<? super Throwable> failureHandler)
+    {
+        Objects.requireNonNull(failureHandler, 
+            "The failureHandler may not be null");
+        ThreadPoolExecutor e = 
+            new ThreadPoolExecutor(poolSize, poolSize,
+                keepAliveTime, timeUnit, new LinkedBlockingQueue<Runnable>())
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                if (command == null || command instanceof Future<?>)
+                {
+                    super.execute(command);
+                    return;
+                }
+                super.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
                     {
-                        Future<?> future = (Future<?>) r;
-                        if (future.isDone())
+                        try
                         {
-                            future.get();
+                            command.run();
                         }
-                    }
-                    catch (CancellationException ce)
-                    {
-                        if (rethrowCancellation)
+                        catch (Throwable t)
                         {
-                            t = ce;
+                            report(t, failureHandler);
                         }
                     }
-                    catch (ExecutionException ee)
-                    {
-                        t = ee.getCause();
-                    }
-                    catch (InterruptedException ie)
-                    {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                if (t != null)
+                });
+            }
+            
+            @Override
+            protected void afterExecute(Runnable r, Throwable t)
+            {
+                super.afterExecute(r, t);
+                Throwable throwable = 
+                    obtainThrowable(r, t, reportCancellation);
+                if (throwable != null)
                 {
-                    throw new RuntimeException(t);
+                    report(throwable, failureHandler);
                 }
             }
         };
         e.allowCoreThreadTimeOut(true);
         return e;
     }
-
+    
+    /**
+     * Creates an executor service with a fixed pool size, that will time 
+     * out after a certain period of inactivity, and that uses a queue
+     * with a fixed capacity.<br>
+     * <br>
+     * The queue is backed by an array, so that no objects are allocated 
+     * for the queue entries. When a task is submitted while the queue is 
+     * full, then the behavior depends on the given 
+     * {@link BackpressurePolicy}.
+     * 
+     * @param poolSize The core- and maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @param queueCapacity The capacity of the queue
+     * @param backpressurePolicy The {@link BackpressurePolicy}
+     * @return The executor service
+     * @throws IllegalArgumentException If the queue capacity is not 
+     * positive
+     * @throws NullPointerException If the policy is <code>null</code>
+     */
+    public static ExecutorService createFixedTimeoutBoundedExecutorService(
+        int poolSize, long keepAliveTime, TimeUnit timeUnit, 
+        int queueCapacity, BackpressurePolicy backpressurePolicy)
+    {
+        Objects.requireNonNull(backpressurePolicy, 
+            "The backpressurePolicy may not be null");
+        RejectedExecutionHandler handler = null;
+        switch (backpressurePolicy)
+        {
+            case BLOCK:
+                handler = createOfferingHandler(Long.MAX_VALUE, 
+                    TimeUnit.NANOSECONDS);
+                break;
+                
+            case CALLER_RUNS:
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+                break;
+                
+            default:
+                throw new IllegalArgumentException(
+                    "Invalid backpressure policy: " + backpressurePolicy);
+        }
+        ThreadPoolExecutor e = 
+            new ThreadPoolExecutor(poolSize, poolSize,
+                keepAliveTime, timeUnit, 
+                new ArrayBlockingQueue<Runnable>(queueCapacity), handler);
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+    
+    /**
+     * Creates an executor service with a fixed pool size, that will time 
+     * out after a certain period of inactivity, and that uses a queue
+     * with a fixed capacity.<br>
+     * <br>
+     * The queue is backed by an array, so that no objects are allocated 
+     * for the queue entries. When a task is submitted while the queue is 
+     * full, then the submitting thread will wait for at most the given
+     * time for space to become available in the queue. If no space
+     * becomes available, then a <code>RejectedExecutionException</code>
+     * will be thrown.
+     * 
+     * @param poolSize The core- and maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @param queueCapacity The capacity of the queue
+     * @param offerTimeout The maximum time to wait for space in the queue
+     * @param offerTimeUnit The unit of the offer timeout
+     * @return The executor service
+     * @throws IllegalArgumentException If the queue capacity is not 
+     * positive
+     */
+    public static ExecutorService createFixedTimeoutBoundedExecutorService(
+        int poolSize, long keepAliveTime, TimeUnit timeUnit, 
+        int queueCapacity, long offerTimeout, TimeUnit offerTimeUnit)
+    {
+        RejectedExecutionHandler handler = 
+            createOfferingHandler(offerTimeout, offerTimeUnit);
+        ThreadPoolExecutor e = 
+            new ThreadPoolExecutor(poolSize, poolSize,
+                keepAliveTime, timeUnit, 
+                new ArrayBlockingQueue<Runnable>(queueCapacity), handler);
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+    
+    /**
+     * Creates an executor service with a fixed pool size, that will time 
+     * out after a certain period of inactivity, and that records 
+     * statistics about the tasks that it executes. The statistics may
+     * be obtained with {@link InstrumentedExecutorService#getStatistics()}.
+     * 
+     * @param poolSize The core- and maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @return The executor service
+     */
+    public static InstrumentedExecutorService 
+        createFixedTimeoutInstrumentedExecutorService(
+            int poolSize, long keepAliveTime, TimeUnit timeUnit)
+    {
+        InstrumentedExecutorService e = 
+            new InstrumentedExecutorService(poolSize, poolSize,
+                keepAliveTime, timeUnit, new LinkedBlockingQueue<Runnable>(), 
+                new ThreadPoolExecutor.AbortPolicy());
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+    
+    /**
+     * Creates an executor service whose pool size is adjusted between
+     * the given minimum and maximum, based on the measured queue wait
+     * times and the CPU utilization of the tasks. See 
+     * {@link AdaptiveExecutorService} for details.<br>
+     * <br>
+     * The pool size will initially be the minimum pool size. The threads 
+     * of the executor will time out after a certain period of inactivity.
+     * 
+     * @param minPoolSize The minimum pool size
+     * @param maxPoolSize The maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param timeUnit The time unit
+     * @param targetQueueWaitTime The queue wait time above which the
+     * pool size may be increased
+     * @param targetQueueWaitTimeUnit The unit of the target queue wait time
+     * @return The executor service
+     * @throws IllegalArgumentException If the minimum pool size is not 
+     * positive, or larger than the maximum pool size
+     */
+    public static AdaptiveExecutorService createAdaptiveExecutorService(
+        int minPoolSize, int maxPoolSize, 
+        long keepAliveTime, TimeUnit timeUnit,
+        long targetQueueWaitTime, TimeUnit targetQueueWaitTimeUnit)
+    {
+        AdaptiveExecutorService e = new AdaptiveExecutorService(
+            minPoolSize, maxPoolSize, keepAliveTime, timeUnit, 
+            targetQueueWaitTime, targetQueueWaitTimeUnit);
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+    
+    /**
+     * Creates an executor service that is intended for the low-latency
+     * dispatch of short tasks to a fixed number of daemon threads. See
+     * {@link LowLatencyExecutorService} for details.<br>
+     * <br>
+     * Unlike the other executor services that are created by this class,
+     * the threads of this executor do not time out. Instead, idle threads
+     * are parked, and the executor should be shut down when it is no 
+     * longer needed. 
+     * 
+     * @param numThreads The number of threads
+     * @param queueCapacity The capacity of the task queue
+     * @return The executor service
+     * @throws IllegalArgumentException If the number of threads or the
+     * queue capacity is not positive
+     */
+    public static ExecutorService createLowLatencyExecutorService(
+        int numThreads, int queueCapacity)
+    {
+        return new LowLatencyExecutorService(numThreads, queueCapacity);
+    }
+    
+    /**
+     * Returns whether virtual threads are supported by the current 
+     * Java version. This is the case for Java 21 and later.
+     * 
+     * @return Whether virtual threads are supported
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return VirtualThreads.isSupported();
+    }
+    
+    /**
+     * Creates an executor service that executes each task in its own
+     * virtual thread, if virtual threads are supported. This is intended 
+     * for tasks that spend most of their time in blocking operations, 
+     * like I/O. The number of tasks that are executed concurrently is 
+     * not limited.<br>
+     * <br>
+     * If virtual threads are not supported by the current Java version 
+     * (see {@link #isVirtualThreadSupported()}), then an executor 
+     * service with a fixed pool size of platform threads will be
+     * returned, as created with {@link #createFixedTimeoutExecutorService(
+     * int, long, TimeUnit)}, using the given fallback parameters.
+     * 
+     * @param fallbackPoolSize The core- and maximum pool size for the 
+     * case that virtual threads are not supported
+     * @param keepAliveTime The keep alive time for the case that virtual
+     * threads are not supported
+     * @param timeUnit The time unit
+     * @return The executor service
+     */
+    public static ExecutorService createVirtualThreadExecutorService(
+        int fallbackPoolSize, long keepAliveTime, TimeUnit timeUnit)
+    {
+        if (VirtualThreads.isSupported())
+        {
+            return VirtualThreads.createVirtualThreadPerTaskExecutorService();
+        }
+        return createFixedTimeoutExecutorService(
+            fallbackPoolSize, keepAliveTime, timeUnit);
+    }
+    
     /**
      * Creates an executor service with a fixed pool size, that will time 
      * out after a certain period of inactivity.
@@ -122,6 +410,124 @@ public class ExecutorServices
         return e;
     }
     
+    /**
+     * Creates a rejected execution handler that tries to put the 
+     * rejected task into the queue of the executor, waiting at most
+     * for the given time.
+     * 
+     * @param offerTimeout The maximum time to wait for space in the queue.
+     * If this is <code>Long.MAX_VALUE</code>, then the handler will wait
+     * until space becomes available.
+     * @param offerTimeUnit The unit of the offer timeout
+     * @return The rejected execution handler
+     */
+    private static RejectedExecutionHandler createOfferingHandler(
+        final long offerTimeout, final TimeUnit offerTimeUnit)
+    {
+        return (r, executor) ->
+        {
+            if (executor.isShutdown())
+            {
+                throw new RejectedExecutionException(
+                    "The executor service has been shut down");
+            }
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            try
+            {
+                if (offerTimeout == Long.MAX_VALUE)
+                {
+                    queue.put(r);
+                }
+                else if (!queue.offer(r, offerTimeout, offerTimeUnit))
+                {
+                    throw new RejectedExecutionException(
+                        "The queue of the executor service was full for " 
+                        + offerTimeout + " " + offerTimeUnit);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(
+                    "Interrupted while waiting for space in the queue", e);
+            }
+            if (executor.isShutdown() && executor.remove(r))
+            {
+                throw new RejectedExecutionException(
+                    "The executor service has been shut down");
+            }
+            
+            // The worker threads may have timed out in the meantime
+            executor.prestartCoreThread();
+        };
+    }
+    
+    /**
+     * Obtain the exception that was caused by the given task. This is 
+     * either the given throwable, or the exception that caused the given
+     * task to fail, if it is a <code>Future</code> that is done.
+     * 
+     * @param r The task, as given to <code>afterExecute</code>
+     * @param t The throwable, as given to <code>afterExecute</code>
+     * @param includeCancellation Whether a CancellationException should
+     * be returned when the task was cancelled
+     * @return The exception, or <code>null</code>
+     */
+    private static Throwable obtainThrowable(
+        Runnable r, Throwable t, boolean includeCancellation)
+    {
+        if (t == null && r instanceof Future<?>)
+        {
+            try
+            {
+                Future<?> future = (Future<?>) r;
+                if (future.isDone())
+                {
+                    future.get();
+                }
+            }
+            catch (CancellationException ce)
+            {
+                if (includeCancellation)
+                {
+                    return ce;
+                }
+            }
+            catch (ExecutionException ee)
+            {
+                return ee.getCause();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return t;
+    }
+    
+    /**
+     * Pass the given throwable to the given failure handler. If the
+     * failure handler throws an exception, it will be passed to the 
+     * uncaught exception handler of the current thread.
+     * 
+     * @param t The throwable
+     * @param failureHandler The failure handler
+     */
+    private static void report(
+        Throwable t, Consumer<? super Throwable> failureHandler)
+    {
+        try
+        {
+            failureHandler.accept(t);
+        }
+        catch (Throwable handlerThrowable)
+        {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(
+                thread, handlerThrowable);
+        }
+    }
+    
 
     /**
      * Private constructor to prevent instantiation
@@ -0,0 +1,204 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+/**
+ * An immutable snapshot of the statistics of an 
+ * {@link InstrumentedExecutorService}. All durations are given in 
+ * nanoseconds.
+ */
+public final class ExecutorStatistics
+{
+    /**
+     * The histogram of the queue wait times
+     */
+    private final HistogramSnapshot queueWaitTimes;
+    
+    /**
+     * The histogram of the execution times
+     */
+    private final HistogramSnapshot executionTimes;
+    
+    /**
+     * The histogram of the queue sizes at the time of submission
+     */
+    private final HistogramSnapshot queueSizes;
+    
+    /**
+     * The current queue size
+     */
+    private final int queueSize;
+    
+    /**
+     * The number of rejected tasks
+     */
+    private final long rejectedTaskCount;
+    
+    /**
+     * The number of tasks that are currently being executed
+     */
+    private final int activeCount;
+    
+    /**
+     * The maximum number of tasks that have been executed concurrently
+     */
+    private final int peakActiveCount;
+    
+    /**
+     * The current number of threads in the pool
+     */
+    private final int poolSize;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param queueWaitTimes The histogram of the queue wait times
+     * @param executionTimes The histogram of the execution times
+     * @param queueSizes The histogram of the queue sizes
+     * @param queueSize The current queue size
+     * @param rejectedTaskCount The number of rejected tasks
+     * @param activeCount The number of active tasks
+     * @param peakActiveCount The peak number of active tasks
+     * @param poolSize The pool size
+     */
+    ExecutorStatistics(
+        HistogramSnapshot queueWaitTimes, 
+        HistogramSnapshot executionTimes,
+        HistogramSnapshot queueSizes, 
+        int queueSize, long rejectedTaskCount, 
+        int activeCount, int peakActiveCount, int poolSize)
+    {
+        this.queueWaitTimes = queueWaitTimes;
+        this.executionTimes = executionTimes;
+        this.queueSizes = queueSizes;
+        this.queueSize = queueSize;
+        this.rejectedTaskCount = rejectedTaskCount;
+        this.activeCount = activeCount;
+        this.peakActiveCount = peakActiveCount;
+        this.poolSize = poolSize;
+    }
+    
+    /**
+     * Returns the histogram of the times that the tasks spent in the 
+     * queue, between their submission and the start of their execution
+     * 
+     * @return The queue wait times
+     */
+    public HistogramSnapshot getQueueWaitTimes()
+    {
+        return queueWaitTimes;
+    }
+
+    /**
+     * Returns the histogram of the execution times of the tasks
+     * 
+     * @return The execution times
+     */
+    public HistogramSnapshot getExecutionTimes()
+    {
+        return executionTimes;
+    }
+    
+    /**
+     * Returns the histogram of the queue sizes, sampled whenever a
+     * task was submitted
+     * 
+     * @return The queue sizes
+     */
+    public HistogramSnapshot getQueueSizes()
+    {
+        return queueSizes;
+    }
+
+    /**
+     * Returns the size of the queue at the time when this snapshot
+     * was taken
+     * 
+     * @return The queue size
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    /**
+     * Returns the number of tasks that have been rejected
+     * 
+     * @return The rejected task count
+     */
+    public long getRejectedTaskCount()
+    {
+        return rejectedTaskCount;
+    }
+
+    /**
+     * Returns the number of tasks that were executed at the time when 
+     * this snapshot was taken
+     * 
+     * @return The active count
+     */
+    public int getActiveCount()
+    {
+        return activeCount;
+    }
+    
+    /**
+     * Returns the maximum number of tasks that have been executed 
+     * concurrently
+     * 
+     * @return The peak active count
+     */
+    public int getPeakActiveCount()
+    {
+        return peakActiveCount;
+    }
+
+    /**
+     * Returns the number of threads in the pool at the time when this
+     * snapshot was taken
+     * 
+     * @return The pool size
+     */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "ExecutorStatistics[" 
+            + "queueWaitTimes=" + queueWaitTimes + ", "
+            + "executionTimes=" + executionTimes + ", "
+            + "queueSizes=" + queueSizes + ", "
+            + "queueSize=" + queueSize + ", "
+            + "rejectedTaskCount=" + rejectedTaskCount + ", "
+            + "activeCount=" + activeCount + ", "
+            + "peakActiveCount=" + peakActiveCount + ", "
+            + "poolSize=" + poolSize + "]";
+    }
+}
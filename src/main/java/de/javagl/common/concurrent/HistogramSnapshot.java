@@ -0,0 +1,170 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of a histogram of non-negative <code>long</code> 
+ * values, for example, durations in nanoseconds.<br>
+ * <br>
+ * The values that are returned by {@link #getValueAtPercentile(double)}
+ * are approximations, with a relative error of at most about 3%.
+ */
+public final class HistogramSnapshot
+{
+    /**
+     * The counts for the buckets
+     */
+    private final long counts[];
+    
+    /**
+     * The total number of values
+     */
+    private final long count;
+    
+    /**
+     * The minimum value
+     */
+    private final long min;
+    
+    /**
+     * The maximum value
+     */
+    private final long max;
+    
+    /**
+     * The mean of the values
+     */
+    private final double mean;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param counts The counts for the buckets. A reference to this
+     * array will be stored.
+     * @param count The total number of values
+     * @param min The minimum value
+     * @param max The maximum value
+     * @param mean The mean of the values
+     */
+    HistogramSnapshot(
+        long counts[], long count, long min, long max, double mean)
+    {
+        this.counts = counts;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+    }
+    
+    /**
+     * Returns the total number of values
+     * 
+     * @return The number of values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+    
+    /**
+     * Returns the minimum value, or 0 if there are no values
+     * 
+     * @return The minimum value
+     */
+    public long getMin()
+    {
+        return min;
+    }
+    
+    /**
+     * Returns the maximum value, or 0 if there are no values
+     * 
+     * @return The maximum value
+     */
+    public long getMax()
+    {
+        return max;
+    }
+    
+    /**
+     * Returns the mean of the values, or 0.0 if there are no values
+     * 
+     * @return The mean value
+     */
+    public double getMean()
+    {
+        return mean;
+    }
+    
+    /**
+     * Returns the value at the given percentile. This is the (approximate)
+     * value that is not exceeded by the given percentage of all values.
+     * If there are no values, then 0 is returned.
+     * 
+     * @param percentile The percentile, in [0,100]
+     * @return The value at the given percentile
+     * @throws IllegalArgumentException If the percentile is not in [0,100]
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (!(percentile >= 0.0 && percentile <= 100.0))
+        {
+            throw new IllegalArgumentException(
+                "The percentile must be in [0,100], but is " + percentile);
+        }
+        if (count == 0)
+        {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile / 100.0 * count);
+        target = Math.max(1, Math.min(count, target));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            cumulative += counts[i];
+            if (cumulative >= target)
+            {
+                long value = ConcurrentHistogram.highestValueInBucket(i);
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.ENGLISH, 
+            "HistogramSnapshot[count=%d, min=%d, mean=%.1f, p50=%d, " 
+            + "p90=%d, p99=%d, p99.9=%d, max=%d]", 
+            count, min, getMean(), 
+            getValueAtPercentile(50.0), getValueAtPercentile(90.0), 
+            getValueAtPercentile(99.0), getValueAtPercentile(99.9), max);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <code>ThreadPoolExecutor</code> that records statistics about the
+ * tasks that it executes. The statistics may be obtained with
+ * {@link #getStatistics()}.<br>
+ * <br>
+ * Note that the tasks that are passed to the <code>execute</code> method 
+ * will be wrapped internally, in order to record the time when they
+ * have been submitted. So these tasks will not appear in the queue of
+ * this executor.<br>
+ * <br>
+ * Instances of this class may be created with 
+ * {@link ExecutorServices#createFixedTimeoutInstrumentedExecutorService(
+ * int, long, TimeUnit)}.
+ */
+public class InstrumentedExecutorService extends ThreadPoolExecutor
+{
+    /**
+     * The histogram of the queue wait times
+     */
+    private final ConcurrentHistogram queueWaitTimes;
+    
+    /**
+     * The histogram of the execution times
+     */
+    private final ConcurrentHistogram executionTimes;
+    
+    /**
+     * The histogram of the queue sizes at the time of submission
+     */
+    private final ConcurrentHistogram queueSizes;
+    
+    /**
+     * The number of rejected tasks
+     */
+    private final LongAdder rejectedTaskCount;
+    
+    /**
+     * The number of currently active tasks
+     */
+    private final AtomicInteger activeCount;
+    
+    /**
+     * The maximum number of concurrently active tasks
+     */
+    private final AtomicInteger peakActiveCount;
+    
+    /**
+     * Creates a new instance. See the documentation of the 
+     * <code>ThreadPoolExecutor</code> constructor for details.
+     * 
+     * @param corePoolSize The core pool size
+     * @param maximumPoolSize The maximum pool size
+     * @param keepAliveTime The keep alive time
+     * @param unit The unit of the keep alive time
+     * @param workQueue The work queue
+     * @param handler The rejected execution handler
+     */
+    public InstrumentedExecutorService(
+        int corePoolSize, int maximumPoolSize, 
+        long keepAliveTime, TimeUnit unit, 
+        BlockingQueue<Runnable> workQueue, 
+        RejectedExecutionHandler handler)
+    {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, 
+            workQueue, handler);
+        this.queueWaitTimes = new ConcurrentHistogram();
+        this.executionTimes = new ConcurrentHistogram();
+        this.queueSizes = new ConcurrentHistogram();
+        this.rejectedTaskCount = new LongAdder();
+        this.activeCount = new AtomicInteger();
+        this.peakActiveCount = new AtomicInteger();
+        setRejectedExecutionHandler(handler);
+    }
+    
+    /**
+     * Returns a snapshot of the current statistics of this executor
+     * 
+     * @return The {@link ExecutorStatistics}
+     */
+    public ExecutorStatistics getStatistics()
+    {
+        return new ExecutorStatistics(
+            queueWaitTimes.snapshot(), 
+            executionTimes.snapshot(), 
+            queueSizes.snapshot(), 
+            getQueue().size(), 
+            rejectedTaskCount.sum(), 
+            activeCount.get(), 
+            peakActiveCount.get(), 
+            getPoolSize());
+    }
+    
+    @Override
+    public void setRejectedExecutionHandler(
+        final RejectedExecutionHandler handler)
+    {
+        Objects.requireNonNull(handler, "The handler may not be null");
+        super.setRejectedExecutionHandler((r, executor) -> 
+        {
+            rejectedTaskCount.increment();
+            handler.rejectedExecution(r, executor);
+        });
+    }
+    
+    @Override
+    public void execute(Runnable command)
+    {
+        if (command == null)
+        {
+            throw new NullPointerException();
+        }
+        queueSizes.record(getQueue().size());
+        super.execute(new TimedRunnable(command));
+    }
+    
+    @Override
+    protected void beforeExecute(Thread t, Runnable r)
+    {
+        super.beforeExecute(t, r);
+        int active = activeCount.incrementAndGet();
+        int peak = peakActiveCount.get();
+        while (active > peak && !peakActiveCount.compareAndSet(peak, active))
+        {
+            peak = peakActiveCount.get();
+        }
+        if (r instanceof TimedRunnable)
+        {
+            TimedRunnable timedRunnable = (TimedRunnable) r;
+            timedRunnable.startNanos = System.nanoTime();
+            queueWaitTimes.record(
+                timedRunnable.startNanos - timedRunnable.submitNanos);
+        }
+    }
+    
+    @Override
+    protected void afterExecute(Runnable r, Throwable t)
+    {
+        super.afterExecute(r, t);
+        activeCount.decrementAndGet();
+        if (r instanceof TimedRunnable)
+        {
+            TimedRunnable timedRunnable = (TimedRunnable) r;
+            executionTimes.record(
+                System.nanoTime() - timedRunnable.startNanos);
+        }
+    }
+}
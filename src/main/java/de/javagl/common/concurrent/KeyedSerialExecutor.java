@@ -0,0 +1,267 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A class that executes tasks that are associated with keys, so that
+ * all tasks for one key are executed sequentially, in the order in 
+ * which they have been submitted, while tasks for different keys may
+ * be executed in parallel.<br>
+ * <br>
+ * The keys are mapped to a fixed number of lanes, based on their hash 
+ * code. Each lane has its own lock-free queue. When a task is submitted 
+ * to a lane that is currently not active, then the lane is passed to 
+ * the underlying executor, which will execute the tasks of this lane 
+ * one after another. So tasks for different keys that are mapped to 
+ * the same lane will also be executed sequentially. The number of 
+ * lanes should therefore be considerably larger than the number of 
+ * threads of the underlying executor.<br>
+ * <br>
+ * If a task throws an exception, then the remaining tasks of the lane
+ * will still be executed, and the exception will be passed on to the
+ * underlying executor.<br>
+ * <br>
+ * If the underlying executor rejects a lane that still contains tasks 
+ * that have already been accepted, then these tasks are executed by 
+ * the thread that tried to pass the lane to the executor. Exceptions 
+ * from these tasks are passed to the uncaught exception handler of 
+ * this thread.
+ */
+public final class KeyedSerialExecutor
+{
+    /**
+     * The maximum number of tasks that are executed for one lane before
+     * the lane is passed to the underlying executor again, to give other 
+     * lanes the chance to be executed
+     */
+    private static final int BATCH_SIZE = 64;
+    
+    /**
+     * The underlying executor
+     */
+    private final Executor executor;
+    
+    /**
+     * The lanes
+     */
+    private final Lane lanes[];
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param numLanes The number of lanes
+     * @param executor The underlying executor
+     * @throws IllegalArgumentException If the number of lanes is not
+     * positive
+     * @throws NullPointerException If the executor is <code>null</code>
+     */
+    public KeyedSerialExecutor(int numLanes, Executor executor)
+    {
+        if (numLanes <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The number of lanes must be positive, but is " + numLanes);
+        }
+        this.executor = Objects.requireNonNull(executor, 
+            "The executor may not be null");
+        this.lanes = new Lane[numLanes];
+        for (int i = 0; i < numLanes; i++)
+        {
+            lanes[i] = new Lane();
+        }
+    }
+    
+    /**
+     * Returns the number of lanes
+     * 
+     * @return The number of lanes
+     */
+    public int getNumLanes()
+    {
+        return lanes.length;
+    }
+    
+    /**
+     * Execute the given task after all tasks that have previously been
+     * submitted for the given key.
+     * 
+     * @param key The key
+     * @param task The task
+     * @throws NullPointerException If the key or the task is 
+     * <code>null</code>
+     * @throws RejectedExecutionException If the underlying executor
+     * rejected the execution. In this case, the given task will not be
+     * executed.
+     */
+    public void execute(Object key, Runnable task)
+    {
+        Objects.requireNonNull(key, "The key may not be null");
+        Objects.requireNonNull(task, "The task may not be null");
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        Lane lane = lanes[(h & 0x7FFFFFFF) % lanes.length];
+        
+        // Enqueue a new instance, so that exactly this entry can be 
+        // removed when the execution is rejected, even if the same
+        // task has been submitted multiple times
+        Runnable entry = task::run;
+        lane.tasks.offer(entry);
+        if (lane.scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(lane);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // If the entry is no longer contained in the queue, then
+                // it was already executed by the previous run of the lane
+                boolean removed = lane.tasks.remove(entry);
+                lane.release();
+                if (removed)
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    /**
+     * A lane, consisting of a queue of tasks that are executed 
+     * sequentially
+     */
+    private final class Lane implements Runnable
+    {
+        /**
+         * The tasks of this lane
+         */
+        private final Queue<Runnable> tasks = 
+            new ConcurrentLinkedQueue<Runnable>();
+        
+        /**
+         * Whether this lane is currently scheduled for execution (or
+         * being executed) by the underlying executor
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < BATCH_SIZE; i++)
+                {
+                    Runnable task = tasks.poll();
+                    if (task == null)
+                    {
+                        break;
+                    }
+                    task.run();
+                }
+            }
+            finally
+            {
+                release();
+            }
+        }
+        
+        /**
+         * Must be called by the thread that owns this lane (i.e. that 
+         * set the <code>scheduled</code> flag to <code>true</code>), 
+         * when it does not execute further tasks of this lane.<br>
+         * <br>
+         * If the lane contains tasks, then the lane is passed to the 
+         * underlying executor again. If the underlying executor rejects 
+         * the lane, then the tasks are executed by the calling thread, 
+         * and exceptions from these tasks are passed to the uncaught 
+         * exception handler of the calling thread. Otherwise, the lane
+         * is marked as not being scheduled. This method does not throw
+         * any exceptions.
+         */
+        void release()
+        {
+            while (true)
+            {
+                if (tasks.isEmpty())
+                {
+                    scheduled.set(false);
+                    
+                    // A task may have been added after the queue was
+                    // found to be empty, but before the flag was reset
+                    if (tasks.isEmpty() || 
+                        !scheduled.compareAndSet(false, true))
+                    {
+                        return;
+                    }
+                }
+                try
+                {
+                    executor.execute(this);
+                    return;
+                }
+                catch (RejectedExecutionException e)
+                {
+                    runInCurrentThread();
+                }
+            }
+        }
+        
+        /**
+         * Execute up to {@link KeyedSerialExecutor#BATCH_SIZE} tasks of 
+         * this lane in the calling thread, passing exceptions to the 
+         * uncaught exception handler of the calling thread
+         */
+        private void runInCurrentThread()
+        {
+            Thread thread = Thread.currentThread();
+            for (int i = 0; i < BATCH_SIZE; i++)
+            {
+                Runnable task = tasks.poll();
+                if (task == null)
+                {
+                    break;
+                }
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException | Error t)
+                {
+                    thread.getUncaughtExceptionHandler().uncaughtException(
+                        thread, t);
+                }
+            }
+        }
+    }
+}
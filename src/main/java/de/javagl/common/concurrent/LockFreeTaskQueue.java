@@ -0,0 +1,226 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for tasks that may be used by multiple
+ * producers and multiple consumers.<br>
+ * <br>
+ * This is an array-based queue where each slot carries a sequence 
+ * number that indicates whether the slot may currently be written by 
+ * a producer or read by a consumer. Producers and consumers only 
+ * contend on the respective position counter, and neither 
+ * {@link #offer(Runnable)} nor {@link #poll()} allocate any objects.
+ */
+final class LockFreeTaskQueue
+{
+    /**
+     * The elements
+     */
+    private final AtomicReferenceArray<Runnable> elements;
+    
+    /**
+     * The sequence numbers of the slots
+     */
+    private final AtomicLongArray sequences;
+    
+    /**
+     * The mask for computing the slot index from a position
+     */
+    private final int mask;
+    
+    /**
+     * The position where the next element will be inserted
+     */
+    private final AtomicLong tail;
+    
+    /**
+     * The position where the next element will be removed
+     */
+    private final AtomicLong head;
+    
+    /**
+     * Creates a new queue with at least the given capacity. The 
+     * actual capacity will be the next power of two, and at least 2,
+     * because a single slot could not distinguish between the states
+     * "full" and "empty" based on its sequence number.
+     * 
+     * @param capacity The capacity
+     * @throws IllegalArgumentException If the capacity is not positive
+     * or larger than 2^30
+     */
+    LockFreeTaskQueue(int capacity)
+    {
+        if (capacity <= 0 || capacity > (1 << 30))
+        {
+            throw new IllegalArgumentException(
+                "The capacity must be in [1, 2^30], but is " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+        this.elements = new AtomicReferenceArray<Runnable>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+    
+    /**
+     * Returns the capacity of this queue
+     * 
+     * @return The capacity
+     */
+    int capacity()
+    {
+        return mask + 1;
+    }
+    
+    /**
+     * Try to insert the given element into this queue
+     * 
+     * @param element The element
+     * @return Whether the element was inserted. This is <code>false</code>
+     * if the queue was full.
+     */
+    boolean offer(Runnable element)
+    {
+        long position = tail.get();
+        while (true)
+        {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0)
+            {
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * Try to remove an element from this queue
+     * 
+     * @return The element, or <code>null</code> if the queue was empty
+     */
+    Runnable poll()
+    {
+        long position = head.get();
+        while (true)
+        {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    Runnable element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            }
+            else if (difference < 0)
+            {
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+    
+    /**
+     * Returns whether this queue is empty. If this returns 
+     * <code>false</code>, then an element may have been claimed by a 
+     * producer, but not be visible for {@link #poll()} yet.
+     * 
+     * @return Whether this queue is empty
+     */
+    boolean isEmpty()
+    {
+        return head.get() >= tail.get();
+    }
+    
+    /**
+     * Returns the (approximate) number of elements in this queue
+     * 
+     * @return The size
+     */
+    int size()
+    {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+    
+    /**
+     * Remove all elements from this queue and add them to the given list
+     * 
+     * @param list The list
+     */
+    void drainTo(List<Runnable> list)
+    {
+        while (!isEmpty())
+        {
+            Runnable element = poll();
+            if (element != null)
+            {
+                list.add(element);
+            }
+            else
+            {
+                Thread.yield();
+            }
+        }
+    }
+}
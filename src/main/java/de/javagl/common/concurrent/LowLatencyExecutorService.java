@@ -0,0 +1,384 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An executor service that is intended for the low-latency dispatch of 
+ * short tasks to a fixed set of worker threads.<br>
+ * <br>
+ * The tasks are passed to the workers via a bounded, lock-free queue. 
+ * Passing a <code>Runnable</code> to {@link #execute(Runnable)} does not 
+ * allocate any objects (whereas the <code>submit</code> methods will 
+ * still wrap the task into a <code>Future</code>). Idle workers spin for
+ * a short time, then yield, and are finally parked. A parked worker is 
+ * only unparked when a task is submitted, so as long as the workers are
+ * busy, the submission does not involve the operating system.<br>
+ * <br>
+ * When the queue is full, then {@link #execute(Runnable)} will throw a 
+ * <code>RejectedExecutionException</code>.<br>
+ * <br>
+ * When a task that was passed to {@link #execute(Runnable)} throws an 
+ * exception, then this exception is passed to the uncaught exception 
+ * handler of the worker thread, and the worker continues with the next 
+ * task.<br>
+ * <br>
+ * The interrupted status of a worker is cleared after each task, and
+ * before the worker is parked. Workers only terminate when this 
+ * executor service is shut down.
+ */
+public final class LowLatencyExecutorService extends AbstractExecutorService
+{
+    /**
+     * The number of iterations that a worker spins while waiting for
+     * a task, before it yields. Spinning is pointless on a single 
+     * processor.
+     */
+    private static final int SPIN_ITERATIONS = 
+        Runtime.getRuntime().availableProcessors() > 1 ? 1 << 12 : 0;
+    
+    /**
+     * The number of iterations that a worker yields while waiting for
+     * a task, before it is parked
+     */
+    private static final int YIELD_ITERATIONS = 1 << 4;
+    
+    /**
+     * A counter for the names of the worker threads
+     */
+    private static final AtomicInteger EXECUTOR_COUNTER = 
+        new AtomicInteger();
+    
+    /**
+     * The queue of tasks
+     */
+    private final LockFreeTaskQueue queue;
+    
+    /**
+     * The worker threads
+     */
+    private final Thread workers[];
+    
+    /**
+     * The flags indicating whether the workers are (about to be) parked
+     */
+    private final AtomicIntegerArray parked;
+    
+    /**
+     * The number of workers that are (about to be) parked
+     */
+    private final AtomicInteger parkedCount;
+    
+    /**
+     * The number of threads that are currently in 
+     * {@link #execute(Runnable)}. Workers will only terminate when
+     * there are no such threads.
+     */
+    private final AtomicInteger submitters;
+    
+    /**
+     * The latch that is counted down when a worker terminates
+     */
+    private final CountDownLatch termination;
+    
+    /**
+     * Whether this executor service has been shut down
+     */
+    private volatile boolean shutdown;
+    
+    /**
+     * Creates a new executor service with the given number of threads,
+     * using daemon threads as its workers
+     * 
+     * @param numThreads The number of threads
+     * @param queueCapacity The capacity of the queue. This will be
+     * rounded up to the next power of two, and be at least 2.
+     * @throws IllegalArgumentException If the number of threads or the
+     * queue capacity is not positive
+     */
+    public LowLatencyExecutorService(int numThreads, int queueCapacity)
+    {
+        this(numThreads, queueCapacity, createDefaultThreadFactory());
+    }
+    
+    /**
+     * Creates a new executor service with the given number of threads,
+     * using the given thread factory to create its workers
+     * 
+     * @param numThreads The number of threads
+     * @param queueCapacity The capacity of the queue. This will be
+     * rounded up to the next power of two, and be at least 2.
+     * @param threadFactory The thread factory
+     * @throws IllegalArgumentException If the number of threads or the
+     * queue capacity is not positive
+     * @throws NullPointerException If the thread factory is 
+     * <code>null</code>
+     */
+    public LowLatencyExecutorService(
+        int numThreads, int queueCapacity, ThreadFactory threadFactory)
+    {
+        if (numThreads <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The number of threads must be positive, but is " 
+                + numThreads);
+        }
+        Objects.requireNonNull(threadFactory, 
+            "The threadFactory may not be null");
+        this.queue = new LockFreeTaskQueue(queueCapacity);
+        this.workers = new Thread[numThreads];
+        this.parked = new AtomicIntegerArray(numThreads);
+        this.parkedCount = new AtomicInteger();
+        this.submitters = new AtomicInteger();
+        this.termination = new CountDownLatch(numThreads);
+        for (int i = 0; i < workers.length; i++)
+        {
+            final int workerIndex = i;
+            workers[i] = threadFactory.newThread(() -> runWorker(workerIndex));
+        }
+        for (Thread worker : workers)
+        {
+            worker.start();
+        }
+    }
+    
+    /**
+     * Creates the default thread factory, which creates daemon threads
+     * 
+     * @return The thread factory
+     */
+    private static ThreadFactory createDefaultThreadFactory()
+    {
+        final int executorIndex = EXECUTOR_COUNTER.getAndIncrement();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> 
+        {
+            Thread thread = new Thread(runnable, "LowLatencyExecutor-" 
+                + executorIndex + "-worker-" 
+                + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Returns the (approximate) number of tasks that are currently
+     * waiting in the queue
+     * 
+     * @return The queue size
+     */
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+    
+    @Override
+    public void execute(Runnable command)
+    {
+        Objects.requireNonNull(command, "The command may not be null");
+        submitters.incrementAndGet();
+        try
+        {
+            if (shutdown)
+            {
+                throw new RejectedExecutionException(
+                    "The executor service has been shut down");
+            }
+            if (!queue.offer(command))
+            {
+                throw new RejectedExecutionException(
+                    "The queue is full");
+            }
+        }
+        finally
+        {
+            submitters.decrementAndGet();
+        }
+        if (parkedCount.get() > 0)
+        {
+            unparkWorker();
+        }
+    }
+    
+    /**
+     * Unpark one of the parked workers, if there is one
+     */
+    private void unparkWorker()
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            if (parked.get(i) != 0 && parked.compareAndSet(i, 1, 0))
+            {
+                parkedCount.decrementAndGet();
+                LockSupport.unpark(workers[i]);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * The main loop of the worker with the given index
+     * 
+     * @param workerIndex The worker index
+     */
+    private void runWorker(int workerIndex)
+    {
+        Thread thread = Thread.currentThread();
+        try
+        {
+            while (true)
+            {
+                Runnable task = awaitTask(workerIndex);
+                if (task == null)
+                {
+                    return;
+                }
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    thread.getUncaughtExceptionHandler().uncaughtException(
+                        thread, t);
+                }
+                
+                // An interrupt that was caused by the task (or arrived
+                // while it was executed) should not affect further tasks
+                Thread.interrupted();
+            }
+        }
+        finally
+        {
+            termination.countDown();
+        }
+    }
+    
+    /**
+     * Wait until a task is available, and return it. Returns 
+     * <code>null</code> if this executor service was shut down and
+     * no more tasks are available.
+     * 
+     * @param workerIndex The worker index
+     * @return The task
+     */
+    private Runnable awaitTask(int workerIndex)
+    {
+        int iterations = 0;
+        while (true)
+        {
+            Runnable task = queue.poll();
+            if (task != null)
+            {
+                return task;
+            }
+            if (shutdown && submitters.get() == 0 && queue.isEmpty())
+            {
+                return null;
+            }
+            if (iterations < SPIN_ITERATIONS)
+            {
+                iterations++;
+            }
+            else if (iterations < SPIN_ITERATIONS + YIELD_ITERATIONS)
+            {
+                iterations++;
+                Thread.yield();
+            }
+            else
+            {
+                // When the interrupted flag is set, then parking would
+                // return immediately, and the worker would be spinning
+                Thread.interrupted();
+                parked.set(workerIndex, 1);
+                parkedCount.incrementAndGet();
+                if (queue.isEmpty() && !shutdown)
+                {
+                    LockSupport.park(this);
+                }
+                if (parked.getAndSet(workerIndex, 0) != 0)
+                {
+                    parkedCount.decrementAndGet();
+                }
+                iterations = 0;
+            }
+        }
+    }
+    
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+        for (Thread worker : workers)
+        {
+            LockSupport.unpark(worker);
+        }
+    }
+    
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        shutdown();
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        queue.drainTo(tasks);
+        for (Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+        return tasks;
+    }
+    
+    @Override
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+    
+    @Override
+    public boolean isTerminated()
+    {
+        return termination.getCount() == 0;
+    }
+    
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        return termination.await(timeout, unit);
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import de.javagl.common.concurrent.ParallelRangeExecutor.RangeExecutor;
+
+/**
+ * A class for the repeated parallel execution of {@link RangeExecutor}
+ * instances, with a fixed set of worker threads.<br>
+ * <br>
+ * The range is divided into sub-ranges exactly as in 
+ * {@link ParallelRangeExecutor#execute(int, 
+ * java.util.concurrent.ExecutorService, int, int, RangeExecutor)}. But
+ * instead of creating new tasks and submitting them to an executor 
+ * service for each execution, the sub-ranges are handed over to worker 
+ * threads that are created once, when this loop is created. The calling
+ * thread processes the sub-range with task index 0. Between two 
+ * executions, the workers spin for a short time and are then parked. 
+ * So an execution does not allocate any objects, and in a tight loop
+ * of executions, the hand-over usually does not involve the operating
+ * system.<br>
+ * <br>
+ * Exceptions that are thrown by the {@link RangeExecutor} will be
+ * passed to the caller of {@link #execute(int, int, RangeExecutor)}. 
+ * If multiple sub-ranges cause exceptions, then only the first one 
+ * will be passed to the caller.<br>
+ * <br>
+ * The {@link #execute(int, int, RangeExecutor)} method may not be called 
+ * by multiple threads concurrently. When this loop is no longer needed, 
+ * it should be closed, to terminate the worker threads.
+ */
+public final class ParallelLoop implements AutoCloseable
+{
+    /**
+     * The number of iterations that a thread spins while waiting,
+     * before it yields. Spinning is pointless on a single processor.
+     */
+    private static final int SPIN_ITERATIONS = 
+        Runtime.getRuntime().availableProcessors() > 1 ? 1 << 12 : 0;
+    
+    /**
+     * The number of iterations that a thread yields while waiting,
+     * before it is parked
+     */
+    private static final int YIELD_ITERATIONS = 1 << 4;
+    
+    /**
+     * A counter for the names of the worker threads
+     */
+    private static final AtomicInteger LOOP_COUNTER = new AtomicInteger();
+    
+    /**
+     * The parallelism
+     */
+    private final int parallelism;
+    
+    /**
+     * The worker threads. The worker at index <code>i</code> processes
+     * the sub-range with the task index <code>i + 1</code>.
+     */
+    private final Thread workers[];
+    
+    /**
+     * The flags indicating whether the workers are (about to be) parked
+     */
+    private final AtomicIntegerArray parked;
+    
+    /**
+     * Whether an execution is currently running
+     */
+    private final AtomicBoolean running;
+    
+    /**
+     * The number of workers that have not finished the current execution
+     * yet. Workers that do not have to process a sub-range in the current
+     * execution will still acknowledge it, so that no worker can lag
+     * behind by one execution.
+     */
+    private final AtomicInteger pending;
+    
+    /**
+     * The first exception that was caused in the current execution
+     */
+    private final AtomicReference<Throwable> failure;
+    
+    /**
+     * The generation of the execution. This is incremented to signal the 
+     * workers that a new execution is started (or that this loop was 
+     * closed)
+     */
+    private volatile int generation;
+    
+    /**
+     * Whether this loop has been closed
+     */
+    private volatile boolean closed;
+    
+    /**
+     * The thread that is currently waiting in an execution
+     */
+    private volatile Thread caller;
+    
+    /**
+     * Whether the caller is (about to be) parked
+     */
+    private volatile boolean callerParked;
+    
+    /**
+     * The {@link RangeExecutor} of the current execution
+     */
+    private RangeExecutor rangeExecutor;
+    
+    /**
+     * The global minimum of the current execution
+     */
+    private int globalMin;
+    
+    /**
+     * The number of tasks of the current execution
+     */
+    private int numTasks;
+    
+    /**
+     * The size of the sub-ranges of the current execution
+     */
+    private int localRange;
+    
+    /**
+     * The number of sub-ranges in the current execution that are
+     * one smaller than the others
+     */
+    private int spare;
+    
+    /**
+     * Creates a new parallel loop with the given parallelism, using
+     * daemon threads as its workers
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * sub-ranges that will be processed in parallel. The loop will 
+     * create <code>parallelism-1</code> worker threads.
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public ParallelLoop(int parallelism)
+    {
+        this(parallelism, createDefaultThreadFactory());
+    }
+    
+    /**
+     * Creates a new parallel loop with the given parallelism, using
+     * the given thread factory to create its workers
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * sub-ranges that will be processed in parallel. The loop will 
+     * create <code>parallelism-1</code> worker threads.
+     * @param threadFactory The thread factory
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws NullPointerException If the thread factory is 
+     * <code>null</code>
+     */
+    public ParallelLoop(int parallelism, ThreadFactory threadFactory)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive, but is " + parallelism);
+        }
+        Objects.requireNonNull(threadFactory, 
+            "The threadFactory may not be null");
+        this.parallelism = parallelism;
+        this.workers = new Thread[parallelism - 1];
+        this.parked = new AtomicIntegerArray(parallelism - 1);
+        this.running = new AtomicBoolean();
+        this.pending = new AtomicInteger();
+        this.failure = new AtomicReference<Throwable>();
+        for (int i = 0; i < workers.length; i++)
+        {
+            final int workerIndex = i;
+            workers[i] = threadFactory.newThread(() -> runWorker(workerIndex));
+        }
+        for (Thread worker : workers)
+        {
+            worker.start();
+        }
+    }
+    
+    /**
+     * Creates the default thread factory, which creates daemon threads
+     * 
+     * @return The thread factory
+     */
+    private static ThreadFactory createDefaultThreadFactory()
+    {
+        final int loopIndex = LOOP_COUNTER.getAndIncrement();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> 
+        {
+            Thread thread = new Thread(runnable, "ParallelLoop-" + loopIndex 
+                + "-worker-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Returns the parallelism of this loop
+     * 
+     * @return The parallelism
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range. This method will return when all 
+     * sub-ranges have been processed.
+     * 
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     * @throws IllegalStateException If this loop has already been closed,
+     * or if this method is called while another execution is running,
+     * for example, by the given {@link RangeExecutor}
+     */
+    public void execute(
+        int globalMin, int globalMax, RangeExecutor rangeExecutor)
+    {
+        if (globalMin > globalMax)
+        {
+            throw new IllegalArgumentException(
+                "The global minimum may not be larger than the global " + 
+                "maximum. Global minimum is "+globalMin+", " + 
+                "global maximum is "+globalMax);
+        }
+        if (closed)
+        {
+            throw new IllegalStateException("The loop has been closed");
+        }
+        if (!running.compareAndSet(false, true))
+        {
+            throw new IllegalStateException(
+                "The loop is already executing");
+        }
+        try
+        {
+            int range = globalMax - globalMin;
+            if (range == 0)
+            {
+                return;
+            }
+            this.rangeExecutor = rangeExecutor;
+            this.globalMin = globalMin;
+            this.numTasks = Math.min(range, parallelism);
+            this.localRange = (range - 1) / numTasks + 1;
+            this.spare = localRange * numTasks - range;
+            this.caller = Thread.currentThread();
+            pending.set(workers.length);
+            
+            // Publish the new execution and wake up the parked workers
+            generation++;
+            for (int i = 0; i < workers.length; i++)
+            {
+                if (parked.get(i) != 0)
+                {
+                    LockSupport.unpark(workers[i]);
+                }
+            }
+            
+            executeTask(0);
+            awaitWorkers();
+            
+            this.rangeExecutor = null;
+            this.caller = null;
+            Throwable t = failure.getAndSet(null);
+            if (t != null)
+            {
+                throw ParallelRangeExecutor.rethrow(t);
+            }
+        }
+        finally
+        {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Wait until all workers have finished the current execution
+     */
+    private void awaitWorkers()
+    {
+        int iterations = 0;
+        while (pending.get() > 0)
+        {
+            if (iterations < SPIN_ITERATIONS)
+            {
+                iterations++;
+            }
+            else if (iterations < SPIN_ITERATIONS + YIELD_ITERATIONS)
+            {
+                iterations++;
+                Thread.yield();
+            }
+            else
+            {
+                callerParked = true;
+                if (pending.get() > 0)
+                {
+                    LockSupport.park(this);
+                }
+                callerParked = false;
+            }
+        }
+    }
+    
+    /**
+     * The main loop of the worker with the given index
+     * 
+     * @param workerIndex The worker index
+     */
+    private void runWorker(int workerIndex)
+    {
+        int seenGeneration = 0;
+        while (true)
+        {
+            seenGeneration = awaitGeneration(workerIndex, seenGeneration);
+            if (closed)
+            {
+                return;
+            }
+            int taskIndex = workerIndex + 1;
+            if (taskIndex < numTasks)
+            {
+                executeTask(taskIndex);
+            }
+            if (pending.decrementAndGet() == 0 && callerParked)
+            {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+    
+    /**
+     * Wait until the generation differs from the given one, and return
+     * the new generation
+     * 
+     * @param workerIndex The worker index
+     * @param seenGeneration The generation that was last seen by the
+     * worker
+     * @return The new generation
+     */
+    private int awaitGeneration(int workerIndex, int seenGeneration)
+    {
+        int iterations = 0;
+        while (true)
+        {
+            int currentGeneration = generation;
+            if (currentGeneration != seenGeneration)
+            {
+                return currentGeneration;
+            }
+            if (iterations < SPIN_ITERATIONS)
+            {
+                iterations++;
+            }
+            else if (iterations < SPIN_ITERATIONS + YIELD_ITERATIONS)
+            {
+                iterations++;
+                Thread.yield();
+            }
+            else
+            {
+                parked.set(workerIndex, 1);
+                if (generation == seenGeneration)
+                {
+                    LockSupport.park(this);
+                }
+                parked.set(workerIndex, 0);
+            }
+        }
+    }
+    
+    /**
+     * Execute the sub-range for the given task index, storing any
+     * exception that is caused by the {@link RangeExecutor}
+     * 
+     * @param taskIndex The task index
+     */
+    private void executeTask(int taskIndex)
+    {
+        int min = globalMin + taskIndex * localRange - 
+            Math.min(taskIndex, spare);
+        int max = min + localRange - (taskIndex < spare ? 1 : 0);
+        try
+        {
+            rangeExecutor.execute(taskIndex, min, max);
+        }
+        catch (Throwable t)
+        {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    /**
+     * Close this loop, causing all worker threads to terminate.
+     * This method may not be called while an execution is running.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        generation++;
+        for (Thread worker : workers)
+        {
+            LockSupport.unpark(worker);
+        }
+    }
+}
@@ -28,9 +28,19 @@ package de.javagl.common.concurrent;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
 
 /**
  * Utility class that can perform an execution on a certain range in
@@ -39,6 +49,20 @@ import java.util.concurrent.Executors;
  */
 public class ParallelRangeExecutor
 {
+    /**
+     * The number of chunks, per task index, into which the range will 
+     * be split for the work stealing execution
+     */
+    private static final int CHUNKS_PER_TASK_INDEX = 8;
+    
+    /**
+     * The executor service for which the current thread is processing
+     * a sub-range, or <code>null</code> if the current thread is not
+     * processing a sub-range
+     */
+    private static final ThreadLocal<ExecutorService> 
+        CURRENT_EXECUTOR_SERVICE = new ThreadLocal<ExecutorService>();
+    
     /**
      * An interface that describes an execution that can be applied to
      * a range of elements
@@ -65,7 +89,21 @@ public class ParallelRangeExecutor
      * executor service.<br>
      * <br>
      * The actual number of tasks that will be created is
-     * <code>min(parallelism, globalMax-globalMin</code>.
+     * <code>min(parallelism, globalMax-globalMin</code>.<br>
+     * <br>
+     * The calling thread will process the first sub-range itself. After
+     * that, it will also process all sub-ranges that have not yet been
+     * started by the executor service, or that have been rejected by
+     * the executor service.<br>
+     * <br>
+     * If this method is called from a thread that is currently processing
+     * a sub-range for the same executor service (for example, when a 
+     * {@link RangeExecutor} calls this method again), then the sub-ranges 
+     * will not be passed to the executor service again, because this 
+     * might cause a starvation of the executor service. If the executor 
+     * service is a <code>ForkJoinPool</code>, then the sub-ranges will be 
+     * forked in the pool, allowing other threads to steal them. Otherwise, 
+     * they will be processed by the calling thread.
      * 
      * @param parallelism The parallelism. This is the maximum number of 
      * tasks that will be created in order to process the specified range.
@@ -86,52 +124,753 @@ public class ParallelRangeExecutor
         int globalMin, int globalMax,
         final RangeExecutor rangeExecutor)
     {
-        if (parallelism <= 0)
+        validate(parallelism, globalMin, globalMax);
+        int bounds[] = computeBounds(parallelism, globalMin, globalMax);
+        List<FutureTask<Object>> tasks = 
+            createTasks(executorService, bounds, rangeExecutor);
+        try
+        {
+            runTasks(executorService, tasks);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range and parallelism level on the given 
+     * executor service, where the range is divided into sub-ranges that 
+     * have approximately the same cost.<br>
+     * <br>
+     * The given cost function will be called once for each index of the
+     * range, by the calling thread, to compute the cost prefix sums. 
+     * When the same range is processed repeatedly, it may be preferable
+     * to compute the prefix sums once, and call 
+     * {@link #executeWeighted(int, ExecutorService, int, int, double[], 
+     * RangeExecutor)} instead.<br>
+     * <br>
+     * Apart from the way of how the range is divided into sub-ranges,
+     * this method behaves like {@link #execute(int, ExecutorService, 
+     * int, int, RangeExecutor)}.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param costFunction The function that receives an index of the
+     * range, and returns the (non-negative) cost of processing the 
+     * element at this index
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static void executeWeighted(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        IntToDoubleFunction costFunction,
+        RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        int range = globalMax - globalMin;
+        double costPrefixSums[] = new double[range + 1];
+        for (int i = 0; i < range; i++)
+        {
+            costPrefixSums[i + 1] = 
+                costPrefixSums[i] + costFunction.applyAsDouble(globalMin + i);
+        }
+        executeWeighted(parallelism, executorService, 
+            globalMin, globalMax, costPrefixSums, rangeExecutor);
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range and parallelism level on the given 
+     * executor service, where the range is divided into sub-ranges that 
+     * have approximately the same cost.<br>
+     * <br>
+     * The cost of the elements is given by the cost prefix sums: The
+     * value at <code>costPrefixSums[i]</code> is the total cost of 
+     * processing the elements in the range 
+     * <code>[globalMin, globalMin+i)</code>. So the array must contain
+     * at least <code>globalMax-globalMin+1</code> elements, and its
+     * elements must be non-decreasing. (Usually, the first element will 
+     * be 0.0, but this is not required). If the total cost is not 
+     * positive, then the range will be divided into sub-ranges of equal 
+     * size.<br>
+     * <br>
+     * Apart from the way of how the range is divided into sub-ranges,
+     * this method behaves like {@link #execute(int, ExecutorService, 
+     * int, int, RangeExecutor)}.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param costPrefixSums The cost prefix sums
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     * @throws IllegalArgumentException If the given array contains less
+     * than <code>globalMax-globalMin+1</code> elements
+     */
+    public static void executeWeighted(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        double costPrefixSums[],
+        RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        int range = globalMax - globalMin;
+        if (costPrefixSums.length < range + 1)
         {
             throw new IllegalArgumentException(
-                "Parallelism must be positive, but is " + parallelism);
+                "Expected at least " + (range + 1) + " cost prefix sums, " 
+                + "but received " + costPrefixSums.length);
         }
-        if (globalMin > globalMax)
+        int bounds[] = computeWeightedBounds(
+            parallelism, globalMin, globalMax, costPrefixSums);
+        List<FutureTask<Object>> tasks = 
+            createTasks(executorService, bounds, rangeExecutor);
+        try
+        {
+            runTasks(executorService, tasks);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range and parallelism level, using virtual 
+     * threads if they are supported.<br>
+     * <br>
+     * This is intended for a {@link RangeExecutor} that spends most of 
+     * its time in blocking operations, like I/O. The parallelism may 
+     * then be considerably larger than the number of processors. The 
+     * executor service that is used internally is created with 
+     * {@link ExecutorServices#createVirtualThreadExecutorService(int, 
+     * long, TimeUnit)}, and shut down when the 
+     * execution is finished. So when virtual threads are not supported, 
+     * then a new pool of platform threads will be created for each call.
+     * <br>
+     * <br>
+     * Apart from that, this method behaves like {@link #execute(int, 
+     * ExecutorService, int, int, RangeExecutor)}.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static void executeOnVirtualThreads(
+        int parallelism, 
+        int globalMin, int globalMax,
+        RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        int numTasks = computeNumTasks(parallelism, globalMin, globalMax);
+        if (numTasks == 0)
+        {
+            return;
+        }
+        ExecutorService executorService = 
+            ExecutorServices.createVirtualThreadExecutorService(
+                numTasks, 1, TimeUnit.SECONDS);
+        try
+        {
+            execute(parallelism, executorService, 
+                globalMin, globalMax, rangeExecutor);
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+    
+    /**
+     * Perform an asynchronous parallel execution of the given 
+     * {@link RangeExecutor} with the specified range and parallelism level
+     * on the given executor.<br>
+     * <br>
+     * The range is divided into sub-ranges exactly as in
+     * {@link #execute(int, ExecutorService, int, int, RangeExecutor)}. 
+     * All sub-ranges are passed to the given executor, and this method
+     * returns immediately.<br>
+     * <br>
+     * The returned future will be completed normally when all sub-ranges 
+     * have been processed. When the {@link RangeExecutor} throws an 
+     * exception for one sub-range, or the executor rejects one of the 
+     * sub-ranges, then the returned future will immediately be completed 
+     * exceptionally with this exception. In this case, the sub-ranges 
+     * that have not been started yet will not be processed at all. The 
+     * same applies when the returned future is cancelled. Note that
+     * sub-ranges that are already being processed at this point will 
+     * not be interrupted.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executor The executor
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @return The future that indicates the completion of the execution
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static CompletableFuture<Void> executeAsync(
+        int parallelism, 
+        Executor executor, 
+        int globalMin, int globalMax,
+        final RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        int bounds[] = computeBounds(parallelism, globalMin, globalMax);
+        int numTasks = bounds.length - 1;
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        if (numTasks == 0)
+        {
+            result.complete(null);
+            return result;
+        }
+        final AtomicInteger remaining = new AtomicInteger(numTasks);
+        for (int i = 0; i < numTasks; i++)
+        {
+            final int taskIndex = i;
+            final int min = bounds[i];
+            final int max = bounds[i + 1];
+            Runnable runnable = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (result.isDone())
+                    {
+                        return;
+                    }
+                    try
+                    {
+                        rangeExecutor.execute(taskIndex, min, max);
+                    }
+                    catch (Throwable t)
+                    {
+                        result.completeExceptionally(t);
+                        return;
+                    }
+                    if (remaining.decrementAndGet() == 0)
+                    {
+                        result.complete(null);
+                    }
+                }
+            };
+            try
+            {
+                executor.execute(runnable);
+            }
+            catch (RejectedExecutionException e)
+            {
+                result.completeExceptionally(e);
+                break;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range on the given <code>ForkJoinPool</code>, 
+     * using work stealing.<br>
+     * <br>
+     * This is the same as calling
+     * {@link #executeWorkStealing(int, ForkJoinPool, int, int, int, 
+     * RangeExecutor)} with a parallelism that is one larger than the
+     * parallelism of the given pool (to account for the calling thread),
+     * and a minimum chunk size of 1.
+     * 
+     * @param forkJoinPool The <code>ForkJoinPool</code>
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the global minimum is larger 
+     * than the global maximum.
+     */
+    public static void executeWorkStealing(
+        ForkJoinPool forkJoinPool, 
+        int globalMin, int globalMax,
+        RangeExecutor rangeExecutor)
+    {
+        executeWorkStealing(forkJoinPool.getParallelism() + 1, 
+            forkJoinPool, globalMin, globalMax, 1, rangeExecutor);
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range on the given <code>ForkJoinPool</code>, 
+     * using work stealing.<br>
+     * <br>
+     * In contrast to {@link #execute(int, ExecutorService, int, int, 
+     * RangeExecutor)}, the range will not be divided into 
+     * <code>parallelism</code> sub-ranges of equal size. Instead, it will
+     * be split recursively into considerably more (and smaller) chunks. 
+     * Threads of the pool that finished processing their chunks will steal
+     * the remaining chunks from other threads. This balances the workload 
+     * when the time that is required for processing one index varies 
+     * strongly.<br>
+     * <br>
+     * The <code>taskIndex</code> that is passed to the given
+     * {@link RangeExecutor} will be a value in 
+     * <code>[0, parallelism)</code>. It is guaranteed that no two 
+     * chunks with the same <code>taskIndex</code> are processed 
+     * concurrently. So the <code>taskIndex</code> may be used to refer
+     * to data that is specific for one worker. But note that 
+     * the same <code>taskIndex</code> will usually be passed to the 
+     * {@link RangeExecutor} many times, for different chunks. If the pool 
+     * uses more threads than the given parallelism, then some threads may 
+     * have to wait until a <code>taskIndex</code> becomes available.<br>
+     * <br>
+     * Exceptions that are thrown by the {@link RangeExecutor} will be
+     * passed to the caller.<br>
+     * <br>
+     * If this method is called from a thread of the given pool (for
+     * example, from a {@link RangeExecutor} that is itself executed in 
+     * this pool), then the calling thread will participate in the 
+     * execution, instead of blocking. 
+     * 
+     * @param parallelism The parallelism. This is the number of 
+     * different task indices that will be passed to the 
+     * {@link RangeExecutor}
+     * @param forkJoinPool The <code>ForkJoinPool</code>
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param minChunkSize The minimum size of a chunk. The range will not
+     * be split into chunks that are smaller than this size.
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the parallelism or the minimum
+     * chunk size is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static void executeWorkStealing(
+        int parallelism, 
+        ForkJoinPool forkJoinPool, 
+        int globalMin, int globalMax,
+        int minChunkSize,
+        RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        if (minChunkSize <= 0)
         {
             throw new IllegalArgumentException(
-                "The global minimum may not be larger than the global " + 
-                "maximum. Global minimum is "+globalMin+", " + 
-                "global maximum is "+globalMax);
+                "The minimum chunk size must be positive, but is " + 
+                minChunkSize);
         }
         int range = globalMax - globalMin;
         if (range == 0)
         {
             return;
         }
-        int numTasks = Math.min(range, parallelism);
+        long numChunks = (long) parallelism * CHUNKS_PER_TASK_INDEX;
+        int chunkSize = (int) Math.max(minChunkSize, 
+            (range - 1) / numChunks + 1);
+        TaskSlots taskSlots = new TaskSlots(parallelism);
+        WorkStealingRangeTask task = new WorkStealingRangeTask(
+            taskSlots, globalMin, globalMax, chunkSize, rangeExecutor);
+        if (ForkJoinTask.getPool() == forkJoinPool)
+        {
+            task.invoke();
+        }
+        else
+        {
+            forkJoinPool.invoke(task);
+        }
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link RangeExecutor}
+     * with the specified range and parallelism level on the given 
+     * executor service, exactly as in {@link #execute(int, ExecutorService, 
+     * int, int, RangeExecutor)}, but pass exceptions that are thrown by 
+     * the {@link RangeExecutor} to the caller.<br>
+     * <br>
+     * If the calling thread is interrupted while waiting for the tasks to
+     * complete, then the remaining tasks will be cancelled, the interrupted
+     * status of the thread will be restored, and a
+     * <code>CancellationException</code> will be thrown.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param rangeExecutor The {@link RangeExecutor} to which the
+     * computation for the sub-ranges will be delegated.
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     * @throws CancellationException If the calling thread was interrupted
+     * while waiting for the tasks to complete
+     */
+    public static void executeChecked(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        RangeExecutor rangeExecutor)
+    {
+        validate(parallelism, globalMin, globalMax);
+        int bounds[] = computeBounds(parallelism, globalMin, globalMax);
+        List<FutureTask<Object>> tasks = 
+            createTasks(executorService, bounds, rangeExecutor);
+        try
+        {
+            runTasks(executorService, tasks);
+            for (Future<Object> task : tasks)
+            {
+                task.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(
+                "Interrupted while waiting for the tasks to complete");
+        }
+        catch (ExecutionException e)
+        {
+            throw rethrow(e.getCause());
+        }
+    }
+    
+    /**
+     * Run the given tasks, using the given executor service.<br>
+     * <br>
+     * If the calling thread is a thread of the given executor service 
+     * that is currently processing one of the sub-ranges, then the tasks 
+     * will either be forked (if the executor service is the 
+     * <code>ForkJoinPool</code> of the calling thread), or executed
+     * directly by the calling thread.<br>
+     * <br>
+     * Otherwise, all tasks except for the first one will be passed to 
+     * the executor service. The first task will be executed by the
+     * calling thread. Afterwards, the calling thread will execute all
+     * tasks that have not been started by the executor service yet.
+     * Finally, it will wait until all tasks are done.
+     * 
+     * @param executorService The executor service
+     * @param tasks The tasks
+     * @throws InterruptedException If the calling thread was interrupted
+     * while waiting for the tasks to complete. In this case, the tasks 
+     * that are not done yet will be cancelled.
+     */
+    private static void runTasks(ExecutorService executorService,
+        List<FutureTask<Object>> tasks) throws InterruptedException
+    {
+        if (tasks.isEmpty())
+        {
+            return;
+        }
+        if (ForkJoinTask.getPool() == executorService)
+        {
+            List<ForkJoinTask<?>> forkJoinTasks = 
+                new ArrayList<ForkJoinTask<?>>(tasks.size());
+            for (FutureTask<Object> task : tasks)
+            {
+                forkJoinTasks.add(ForkJoinTask.adapt(task));
+            }
+            ForkJoinTask.invokeAll(forkJoinTasks);
+            return;
+        }
+        if (CURRENT_EXECUTOR_SERVICE.get() == executorService)
+        {
+            for (FutureTask<Object> task : tasks)
+            {
+                task.run();
+            }
+            return;
+        }
+        boolean done = false;
+        try
+        {
+            for (int i = 1; i < tasks.size(); i++)
+            {
+                try
+                {
+                    executorService.execute(tasks.get(i));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // The task will be executed by the calling thread
+                }
+            }
+            tasks.get(0).run();
+            
+            // Execute the tasks that have not been started by the
+            // executor service. For tasks that have already been
+            // started, this has no effect.
+            for (int i = tasks.size() - 1; i > 0; i--)
+            {
+                tasks.get(i).run();
+            }
+            for (FutureTask<Object> task : tasks)
+            {
+                try
+                {
+                    task.get();
+                }
+                catch (ExecutionException | CancellationException e)
+                {
+                    // Handled by the caller
+                }
+            }
+            done = true;
+        }
+        finally
+        {
+            if (!done)
+            {
+                for (FutureTask<Object> task : tasks)
+                {
+                    task.cancel(true);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of tasks that will be created for processing
+     * the specified range with the given parallelism
+     * 
+     * @param parallelism The parallelism
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @return The number of tasks
+     */
+    static int computeNumTasks(int parallelism, int globalMin, int globalMax)
+    {
+        return Math.min(globalMax - globalMin, parallelism);
+    }
+    
+    /**
+     * Compute the bounds of the sub-ranges that will be processed for
+     * the specified range and parallelism. The result will be an array
+     * of length <code>numTasks+1</code>, where the sub-range for task 
+     * <code>i</code> is <code>[bounds[i], bounds[i+1])</code>. All 
+     * sub-ranges will have the same size, or be one smaller than
+     * the others.
+     * 
+     * @param parallelism The parallelism
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @return The bounds
+     */
+    private static int[] computeBounds(
+        int parallelism, int globalMin, int globalMax)
+    {
+        int range = globalMax - globalMin;
+        int numTasks = computeNumTasks(parallelism, globalMin, globalMax);
+        int bounds[] = new int[numTasks + 1];
+        bounds[0] = globalMin;
+        if (numTasks == 0)
+        {
+            return bounds;
+        }
         int localRange = (range - 1) / numTasks + 1;
         int spare = localRange * numTasks - range;
-        int currentIndex = globalMin;
-        List<Callable<Object>> tasks =
-            new ArrayList<Callable<Object>>(numTasks);
+        for (int i = 0; i < numTasks; i++)
+        {
+            bounds[i + 1] = bounds[i] + localRange - (i < spare ? 1 : 0);
+        }
+        return bounds;
+    }
+    
+    /**
+     * Compute the bounds of the sub-ranges that will be processed for
+     * the specified range and parallelism, so that the sub-ranges have
+     * approximately the same cost. The result will be an array of 
+     * length <code>numTasks+1</code>, where the sub-range for task 
+     * <code>i</code> is <code>[bounds[i], bounds[i+1])</code>. No 
+     * sub-range will be empty.<br>
+     * <br>
+     * If the total cost is not positive, then the bounds will be 
+     * computed as in {@link #computeBounds(int, int, int)}.
+     * 
+     * @param parallelism The parallelism
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param costPrefixSums The cost prefix sums, as described in
+     * {@link #executeWeighted(int, ExecutorService, int, int, double[], 
+     * RangeExecutor)}
+     * @return The bounds
+     */
+    private static int[] computeWeightedBounds(
+        int parallelism, int globalMin, int globalMax, 
+        double costPrefixSums[])
+    {
+        int range = globalMax - globalMin;
+        double totalCost = costPrefixSums[range] - costPrefixSums[0];
+        if (!(totalCost > 0))
+        {
+            return computeBounds(parallelism, globalMin, globalMax);
+        }
+        int numTasks = computeNumTasks(parallelism, globalMin, globalMax);
+        int bounds[] = new int[numTasks + 1];
+        bounds[0] = globalMin;
+        bounds[numTasks] = globalMax;
+        for (int i = 1; i < numTasks; i++)
+        {
+            double target = 
+                costPrefixSums[0] + totalCost * i / numTasks;
+            
+            // Find the smallest j where the prefix sum is at least
+            // the target, and check whether j-1 is closer to it
+            int low = 0;
+            int high = range;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (costPrefixSums[mid] < target)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            int j = low;
+            if (j > 0 && 
+                target - costPrefixSums[j - 1] < costPrefixSums[j] - target)
+            {
+                j--;
+            }
+            int bound = globalMin + j;
+            
+            // Make sure that no sub-range is empty
+            bound = Math.max(bound, bounds[i - 1] + 1);
+            bound = Math.min(bound, globalMax - (numTasks - i));
+            bounds[i] = bound;
+        }
+        return bounds;
+    }
+    
+    /**
+     * Create the tasks that pass the sub-ranges that are defined by the
+     * given bounds to the given {@link RangeExecutor}. When a task is 
+     * executed by a thread other than the calling thread, it will mark 
+     * this thread as processing a sub-range for the given executor service.
+     * 
+     * @param executorService The executor service
+     * @param bounds The bounds of the sub-ranges, as computed with
+     * {@link #computeBounds(int, int, int)}
+     * @param rangeExecutor The {@link RangeExecutor}
+     * @return The tasks
+     */
+    private static List<FutureTask<Object>> createTasks(
+        final ExecutorService executorService, int bounds[], 
+        final RangeExecutor rangeExecutor)
+    {
+        int numTasks = bounds.length - 1;
+        List<FutureTask<Object>> tasks =
+            new ArrayList<FutureTask<Object>>(numTasks);
+        final Thread callingThread = Thread.currentThread();
         for (int i = 0; i < numTasks; i++)
         {
             final int taskIndex = i;
-            final int min = currentIndex;
-            final int max = min + localRange - (i < spare ? 1 : 0);
+            final int min = bounds[i];
+            final int max = bounds[i + 1];
             Runnable runnable = new Runnable()
             {
                 @Override
                 public void run()
                 {
-                    rangeExecutor.execute(taskIndex, min, max);
+                    if (Thread.currentThread() == callingThread)
+                    {
+                        rangeExecutor.execute(taskIndex, min, max);
+                        return;
+                    }
+                    ExecutorService previousExecutorService = 
+                        CURRENT_EXECUTOR_SERVICE.get();
+                    CURRENT_EXECUTOR_SERVICE.set(executorService);
+                    try
+                    {
+                        rangeExecutor.execute(taskIndex, min, max);
+                    }
+                    finally
+                    {
+                        CURRENT_EXECUTOR_SERVICE.set(previousExecutorService);
+                    }
                 }
             };
-            tasks.add(Executors.callable(runnable));
-            currentIndex = max;
+            tasks.add(new FutureTask<Object>(runnable, null));
         }
-        try
+        return tasks;
+    }
+    
+    /**
+     * Returns the given throwable as a runtime exception that may be 
+     * thrown. If the throwable is an <code>Error</code>, it will be 
+     * thrown directly. If it is a <code>RuntimeException</code>, it
+     * will be returned. Otherwise, it will be wrapped into a
+     * <code>RuntimeException</code>.
+     * 
+     * @param t The throwable
+     * @return The runtime exception
+     */
+    static RuntimeException rethrow(Throwable t)
+    {
+        if (t instanceof Error)
         {
-            executorService.invokeAll(tasks);
+            throw (Error) t;
         }
-        catch (InterruptedException e)
+        if (t instanceof RuntimeException)
         {
-            Thread.currentThread().interrupt();
+            return (RuntimeException) t;
+        }
+        return new RuntimeException(t);
+    }
+    
+    /**
+     * Validate the given arguments for the execution
+     * 
+     * @param parallelism The parallelism
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    private static void validate(
+        int parallelism, int globalMin, int globalMax)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive, but is " + parallelism);
+        }
+        if (globalMin > globalMax)
+        {
+            throw new IllegalArgumentException(
+                "The global minimum may not be larger than the global " + 
+                "maximum. Global minimum is "+globalMin+", " + 
+                "global maximum is "+globalMax);
         }
     }
     
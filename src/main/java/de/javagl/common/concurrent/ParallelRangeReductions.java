@@ -0,0 +1,911 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Utility class that can perform a reduction on a certain range in
+ * parallel. The range is divided into sub-ranges, exactly as it is 
+ * done in {@link ParallelRangeExecutor#execute(int, ExecutorService, 
+ * int, int, ParallelRangeExecutor.RangeExecutor)}. Each sub-range is 
+ * reduced to a partial result by a reducer, without any shared state. 
+ * The partial results are then combined pairwise in a tree, preserving
+ * the order of the sub-ranges. So the combining function only has to be 
+ * associative, but not necessarily commutative.<br>
+ * <br>
+ * In contrast to {@link ParallelRangeExecutor#execute(int, ExecutorService, 
+ * int, int, ParallelRangeExecutor.RangeExecutor)}, exceptions that are 
+ * thrown by the reducers are passed to the caller.<br>
+ * <br>
+ * Since the sub-ranges depend on the parallelism, the result of a 
+ * floating-point reduction (like a sum) may depend on the parallelism
+ * as well. The <code>sumDeterministic</code> methods compute sums that 
+ * are bit-identical for any parallelism. The <code>sumExact</code> 
+ * methods compute the correctly rounded exact sum, which is also 
+ * independent of the parallelism.
+ */
+public class ParallelRangeReductions
+{
+    /**
+     * The size of the blocks that are summed up sequentially in the 
+     * <code>sumDeterministic</code> methods
+     */
+    private static final int SUM_BLOCK_SIZE = 1024;
+    
+    /**
+     * An interface that describes a reduction of a range of elements
+     * to a single value
+     * 
+     * @param <T> The type of the result
+     */
+    public static interface RangeReducer<T>
+    {
+        /**
+         * Compute the partial result for the specified range
+         * 
+         * @param taskIndex The index of the task. 
+         * @param min The minimum index, inclusive
+         * @param max The maximum index, exclusive
+         * @return The partial result
+         */
+        T reduce(int taskIndex, int min, int max);
+    }
+    
+    /**
+     * An interface that describes a reduction of a range of elements
+     * to a single <code>double</code> value
+     */
+    public static interface DoubleRangeReducer
+    {
+        /**
+         * Compute the partial result for the specified range
+         * 
+         * @param taskIndex The index of the task. 
+         * @param min The minimum index, inclusive
+         * @param max The maximum index, exclusive
+         * @return The partial result
+         */
+        double reduce(int taskIndex, int min, int max);
+    }
+    
+    /**
+     * An interface that describes a reduction of a range of elements
+     * to a single <code>long</code> value
+     */
+    public static interface LongRangeReducer
+    {
+        /**
+         * Compute the partial result for the specified range
+         * 
+         * @param taskIndex The index of the task. 
+         * @param min The minimum index, inclusive
+         * @param max The maximum index, exclusive
+         * @return The partial result
+         */
+        long reduce(int taskIndex, int min, int max);
+    }
+    
+    /**
+     * An interface that describes a reduction of a range of elements
+     * to a single <code>int</code> value
+     */
+    public static interface IntRangeReducer
+    {
+        /**
+         * Compute the partial result for the specified range
+         * 
+         * @param taskIndex The index of the task. 
+         * @param min The minimum index, inclusive
+         * @param max The maximum index, exclusive
+         * @return The partial result
+         */
+        int reduce(int taskIndex, int min, int max);
+    }
+    
+    /**
+     * Perform a parallel reduction of the specified range with the 
+     * given {@link RangeReducer}, with the specified parallelism level on 
+     * the given executor service.<br>
+     * <br>
+     * The reducer will usually create a new object for each range (for 
+     * example, a histogram for the elements of the range). The combiner 
+     * may then either create a new object from the two given objects, or
+     * merge the second object into the first one and return the first
+     * one. 
+     * 
+     * @param <T> The type of the result
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param identity The value that will be returned if the range
+     * is empty
+     * @param reducer The {@link RangeReducer} that computes the partial
+     * results for the sub-ranges
+     * @param combiner The function that combines two partial results
+     * @return The result
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static <T> T reduce(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        T identity, 
+        RangeReducer<? extends T> reducer, 
+        BinaryOperator<T> combiner)
+    {
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, globalMin, globalMax);
+        Object partials[] = new Object[Math.max(0, numTasks)];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            globalMin, globalMax, (taskIndex, min, max) -> 
+                partials[taskIndex] = reducer.reduce(taskIndex, min, max));
+        if (numTasks == 0)
+        {
+            return identity;
+        }
+        for (int stride = 1; stride < numTasks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numTasks; i += 2 * stride)
+            {
+                @SuppressWarnings("unchecked")
+                T a = (T) partials[i];
+                @SuppressWarnings("unchecked")
+                T b = (T) partials[i + stride];
+                partials[i] = combiner.apply(a, b);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) partials[0];
+        return result;
+    }
+    
+    /**
+     * Perform a parallel reduction of the specified range with the 
+     * given {@link DoubleRangeReducer}, with the specified parallelism 
+     * level on the given executor service.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param identity The value that will be returned if the range
+     * is empty
+     * @param reducer The {@link DoubleRangeReducer} that computes the 
+     * partial results for the sub-ranges
+     * @param combiner The function that combines two partial results
+     * @return The result
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static double reduceDouble(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        double identity, 
+        DoubleRangeReducer reducer, 
+        DoubleBinaryOperator combiner)
+    {
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, globalMin, globalMax);
+        double partials[] = new double[Math.max(0, numTasks)];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            globalMin, globalMax, (taskIndex, min, max) -> 
+                partials[taskIndex] = reducer.reduce(taskIndex, min, max));
+        if (numTasks == 0)
+        {
+            return identity;
+        }
+        for (int stride = 1; stride < numTasks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numTasks; i += 2 * stride)
+            {
+                partials[i] = combiner.applyAsDouble(
+                    partials[i], partials[i + stride]);
+            }
+        }
+        return partials[0];
+    }
+    
+    /**
+     * Perform a parallel reduction of the specified range with the 
+     * given {@link LongRangeReducer}, with the specified parallelism 
+     * level on the given executor service.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param identity The value that will be returned if the range
+     * is empty
+     * @param reducer The {@link LongRangeReducer} that computes the 
+     * partial results for the sub-ranges
+     * @param combiner The function that combines two partial results
+     * @return The result
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static long reduceLong(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        long identity, 
+        LongRangeReducer reducer, 
+        LongBinaryOperator combiner)
+    {
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, globalMin, globalMax);
+        long partials[] = new long[Math.max(0, numTasks)];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            globalMin, globalMax, (taskIndex, min, max) -> 
+                partials[taskIndex] = reducer.reduce(taskIndex, min, max));
+        if (numTasks == 0)
+        {
+            return identity;
+        }
+        for (int stride = 1; stride < numTasks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numTasks; i += 2 * stride)
+            {
+                partials[i] = combiner.applyAsLong(
+                    partials[i], partials[i + stride]);
+            }
+        }
+        return partials[0];
+    }
+    
+    /**
+     * Perform a parallel reduction of the specified range with the 
+     * given {@link IntRangeReducer}, with the specified parallelism 
+     * level on the given executor service.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param identity The value that will be returned if the range
+     * is empty
+     * @param reducer The {@link IntRangeReducer} that computes the 
+     * partial results for the sub-ranges
+     * @param combiner The function that combines two partial results
+     * @return The result
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static int reduceInt(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        int identity, 
+        IntRangeReducer reducer, 
+        IntBinaryOperator combiner)
+    {
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, globalMin, globalMax);
+        int partials[] = new int[Math.max(0, numTasks)];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            globalMin, globalMax, (taskIndex, min, max) -> 
+                partials[taskIndex] = reducer.reduce(taskIndex, min, max));
+        if (numTasks == 0)
+        {
+            return identity;
+        }
+        for (int stride = 1; stride < numTasks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numTasks; i += 2 * stride)
+            {
+                partials[i] = combiner.applyAsInt(
+                    partials[i], partials[i + stride]);
+            }
+        }
+        return partials[0];
+    }
+    
+    /**
+     * Computes the sum of the elements of the given array in the 
+     * specified range, in parallel, such that the result does not 
+     * depend on the parallelism or on the timing of the threads.<br>
+     * <br>
+     * The range is divided into blocks of a fixed size. The elements 
+     * of each block are summed up sequentially, and the block sums are 
+     * then combined pairwise in a tree that only depends on the number 
+     * of blocks. Only the assignment of the blocks to the tasks depends 
+     * on the parallelism. So the result is bit-identical for any 
+     * parallelism.<br>
+     * <br>
+     * If the sum is <code>compensated</code>, then the rounding errors
+     * of the additions are accumulated separately (using the Neumaier
+     * variant of Kahan summation), and added to the result at the end. 
+     * This is slightly slower, but usually yields a result that is much
+     * closer to the exact sum. The exact sum can be computed with
+     * {@link #sumExact(int, ExecutorService, double[], int, int)}.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param array The array
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param compensated Whether the summation should be compensated
+     * @return The sum
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     * @throws IndexOutOfBoundsException If the range is not valid for
+     * the given array
+     */
+    public static double sumDeterministic(
+        int parallelism, 
+        ExecutorService executorService, 
+        double array[], int globalMin, int globalMax,
+        boolean compensated)
+    {
+        Objects.requireNonNull(array, "The array may not be null");
+        if (globalMin < 0 || globalMax > array.length)
+        {
+            throw new IndexOutOfBoundsException(
+                "The range [" + globalMin + "," + globalMax + ") is not "
+                + "valid for an array with length " + array.length);
+        }
+        return sumDeterministic(parallelism, executorService, 
+            globalMin, globalMax, compensated, 
+            (min, max, sums, compensations, block) -> 
+                sumBlock(array, min, max, sums, compensations, block));
+    }
+    
+    /**
+     * Computes the sum of the values that the given function returns 
+     * for the indices in the specified range, in parallel, such that 
+     * the result does not depend on the parallelism or on the timing 
+     * of the threads. See {@link #sumDeterministic(int, ExecutorService, 
+     * double[], int, int, boolean)} for details.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param function The function that provides the values
+     * @param compensated Whether the summation should be compensated
+     * @return The sum
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static double sumDeterministic(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        IntToDoubleFunction function,
+        boolean compensated)
+    {
+        Objects.requireNonNull(function, "The function may not be null");
+        return sumDeterministic(parallelism, executorService, 
+            globalMin, globalMax, compensated, 
+            (min, max, sums, compensations, block) -> 
+                sumBlock(function, min, max, sums, compensations, block));
+    }
+    
+    /**
+     * Computes the sum of the elements of the given array in the 
+     * specified range, in parallel, and returns the exact sum, rounded 
+     * to the nearest <code>double</code> value.<br>
+     * <br>
+     * The blocks of the range are processed as described in 
+     * {@link #sumDeterministic(int, ExecutorService, double[], int, int, 
+     * boolean)}, but instead of a single sum, each block is summed up 
+     * into a list of non-overlapping partial sums that represent the 
+     * exact sum of the block (as in Shewchuk's algorithm). These lists 
+     * are then merged in the tree, and only the final sum is rounded. 
+     * The result does not depend on the parallelism or on the order of 
+     * the elements. This is considerably slower than the 
+     * <code>sumDeterministic</code> methods, but the result does not 
+     * suffer from cancellation.<br>
+     * <br>
+     * If the range contains infinite values or <code>NaN</code>, then 
+     * the result is the sum of these values. If an intermediate sum of
+     * finite values exceeds the range of <code>double</code> values, 
+     * then the sum is computed sequentially, with 
+     * <code>BigDecimal</code>.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param array The array
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @return The sum
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     * @throws IndexOutOfBoundsException If the range is not valid for
+     * the given array
+     */
+    public static double sumExact(
+        int parallelism, 
+        ExecutorService executorService, 
+        double array[], int globalMin, int globalMax)
+    {
+        Objects.requireNonNull(array, "The array may not be null");
+        if (globalMin < 0 || globalMax > array.length)
+        {
+            throw new IndexOutOfBoundsException(
+                "The range [" + globalMin + "," + globalMax + ") is not "
+                + "valid for an array with length " + array.length);
+        }
+        return sumExact(parallelism, executorService, 
+            globalMin, globalMax, i -> array[i]);
+    }
+    
+    /**
+     * Computes the sum of the values that the given function returns 
+     * for the indices in the specified range, in parallel, and returns
+     * the exact sum, rounded to the nearest <code>double</code> value.
+     * See {@link #sumExact(int, ExecutorService, double[], int, int)}
+     * for details.<br>
+     * <br>
+     * The function may be called more than once for the same index, and
+     * must return the same value each time.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the specified range.
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param function The function that provides the values
+     * @return The sum
+     * @throws IllegalArgumentException If the parallelism is not positive
+     * @throws IllegalArgumentException If the global minimum is larger than
+     * the global maximum.
+     */
+    public static double sumExact(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        IntToDoubleFunction function)
+    {
+        Objects.requireNonNull(function, "The function may not be null");
+        if (globalMin > globalMax)
+        {
+            throw new IllegalArgumentException(
+                "The global minimum may not be larger than the global " + 
+                "maximum. Global minimum is "+globalMin+", " + 
+                "global maximum is "+globalMax);
+        }
+        long range = (long) globalMax - globalMin;
+        int numBlocks = (int) ((range + SUM_BLOCK_SIZE - 1) / SUM_BLOCK_SIZE);
+        ExactSum sums[] = new ExactSum[numBlocks];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, numBlocks, (taskIndex, minBlock, maxBlock) -> 
+        {
+            for (int b = minBlock; b < maxBlock; b++)
+            {
+                long min = globalMin + (long) b * SUM_BLOCK_SIZE;
+                long max = Math.min(globalMax, min + SUM_BLOCK_SIZE);
+                ExactSum sum = new ExactSum();
+                for (long i = min; i < max; i++)
+                {
+                    sum.add(function.applyAsDouble((int) i));
+                }
+                sums[b] = sum;
+            }
+        });
+        if (numBlocks == 0)
+        {
+            return 0.0;
+        }
+        for (int stride = 1; stride < numBlocks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numBlocks; i += 2 * stride)
+            {
+                sums[i].addAll(sums[i + stride]);
+            }
+        }
+        ExactSum sum = sums[0];
+        if (!sum.overflow || !Double.isFinite(sum.special))
+        {
+            return sum.round();
+        }
+        
+        // An intermediate sum exceeded the range of double values. 
+        // This is rare enough to fall back to a sequential summation 
+        // with BigDecimal.
+        BigDecimal exact = BigDecimal.ZERO;
+        for (long i = globalMin; i < globalMax; i++)
+        {
+            exact = exact.add(new BigDecimal(
+                function.applyAsDouble((int) i)));
+        }
+        return exact.doubleValue();
+    }
+    
+    /**
+     * A sum of <code>double</code> values that is represented exactly, 
+     * as a list of non-overlapping partial sums with increasing 
+     * magnitude, as described in "Adaptive Precision Floating-Point 
+     * Arithmetic and Fast Robust Geometric Predicates" by Jonathan 
+     * Richard Shewchuk
+     */
+    private static final class ExactSum
+    {
+        /**
+         * The partial sums, sorted by increasing magnitude
+         */
+        private double partials[] = new double[8];
+        
+        /**
+         * The number of partial sums
+         */
+        private int size = 0;
+        
+        /**
+         * The sum of all infinite and <code>NaN</code> values. This is
+         * zero if there have been no such values.
+         */
+        private double special = 0.0;
+        
+        /**
+         * Whether an intermediate sum exceeded the range of double values
+         */
+        private boolean overflow = false;
+        
+        /**
+         * Add the given value to this sum
+         * 
+         * @param value The value
+         */
+        void add(double value)
+        {
+            if (!Double.isFinite(value))
+            {
+                special += value;
+                return;
+            }
+            if (overflow)
+            {
+                return;
+            }
+            double x = value;
+            int n = 0;
+            for (int j = 0; j < size; j++)
+            {
+                double y = partials[j];
+                if (Math.abs(x) < Math.abs(y))
+                {
+                    double t = x;
+                    x = y;
+                    y = t;
+                }
+                double hi = x + y;
+                double lo = y - (hi - x);
+                if (lo != 0.0)
+                {
+                    partials[n++] = lo;
+                }
+                x = hi;
+            }
+            if (!Double.isFinite(x))
+            {
+                overflow = true;
+                return;
+            }
+            if (n == partials.length)
+            {
+                partials = Arrays.copyOf(partials, n * 2);
+            }
+            partials[n++] = x;
+            size = n;
+        }
+        
+        /**
+         * Add the given sum to this sum
+         * 
+         * @param other The other sum
+         */
+        void addAll(ExactSum other)
+        {
+            special += other.special;
+            overflow |= other.overflow;
+            if (overflow)
+            {
+                return;
+            }
+            for (int i = 0; i < other.size; i++)
+            {
+                add(other.partials[i]);
+            }
+        }
+        
+        /**
+         * Returns this sum, rounded to the nearest <code>double</code>
+         * value. The result is unspecified if an overflow occurred and
+         * there have been no infinite or <code>NaN</code> values.
+         * 
+         * @return The rounded sum
+         */
+        double round()
+        {
+            if (!Double.isFinite(special))
+            {
+                return special;
+            }
+            if (size == 0)
+            {
+                return 0.0;
+            }
+            int n = size - 1;
+            double hi = partials[n];
+            double lo = 0.0;
+            while (n > 0)
+            {
+                double x = hi;
+                double y = partials[--n];
+                hi = x + y;
+                lo = y - (hi - x);
+                if (lo != 0.0)
+                {
+                    break;
+                }
+            }
+            
+            // When the remainder is exactly half an ulp of the result,
+            // and the next partial sum has the same sign, then the
+            // result has to be rounded away from zero
+            if (n > 0 && ((lo < 0.0 && partials[n - 1] < 0.0) || 
+                (lo > 0.0 && partials[n - 1] > 0.0)))
+            {
+                double y = lo * 2.0;
+                double x = hi + y;
+                if (y == x - hi)
+                {
+                    hi = x;
+                }
+            }
+            return hi;
+        }
+    }
+    
+    /**
+     * Interface for the sequential summation of one block in the
+     * <code>sumDeterministic</code> methods
+     */
+    private static interface BlockSummation
+    {
+        /**
+         * Compute the sum of the specified block
+         * 
+         * @param min The minimum index, inclusive
+         * @param max The maximum index, exclusive
+         * @param sums The array that receives the block sums
+         * @param compensations The array that receives the compensations
+         * of the block sums, or <code>null</code> if the summation is 
+         * not compensated
+         * @param block The index of the block
+         */
+        void sum(int min, int max, 
+            double sums[], double compensations[], int block);
+    }
+    
+    /**
+     * Implementation of the <code>sumDeterministic</code> methods
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param globalMin The global minimum index of the range
+     * @param globalMax The global maximum index of the range
+     * @param compensated Whether the summation should be compensated
+     * @param blockSummation The block summation
+     * @return The sum
+     */
+    private static double sumDeterministic(
+        int parallelism, 
+        ExecutorService executorService, 
+        int globalMin, int globalMax,
+        boolean compensated,
+        BlockSummation blockSummation)
+    {
+        if (globalMin > globalMax)
+        {
+            throw new IllegalArgumentException(
+                "The global minimum may not be larger than the global " + 
+                "maximum. Global minimum is "+globalMin+", " + 
+                "global maximum is "+globalMax);
+        }
+        long range = (long) globalMax - globalMin;
+        int numBlocks = (int) ((range + SUM_BLOCK_SIZE - 1) / SUM_BLOCK_SIZE);
+        double sums[] = new double[numBlocks];
+        double compensations[] = compensated ? new double[numBlocks] : null;
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, numBlocks, (taskIndex, minBlock, maxBlock) -> 
+        {
+            for (int b = minBlock; b < maxBlock; b++)
+            {
+                long min = globalMin + (long) b * SUM_BLOCK_SIZE;
+                long max = Math.min(globalMax, min + SUM_BLOCK_SIZE);
+                blockSummation.sum(
+                    (int) min, (int) max, sums, compensations, b);
+            }
+        });
+        if (numBlocks == 0)
+        {
+            return 0.0;
+        }
+        for (int stride = 1; stride < numBlocks; stride *= 2)
+        {
+            for (int i = 0; i + stride < numBlocks; i += 2 * stride)
+            {
+                double a = sums[i];
+                double b = sums[i + stride];
+                double s = a + b;
+                sums[i] = s;
+                if (compensations != null)
+                {
+                    compensations[i] += compensations[i + stride] 
+                        + twoSumError(a, b, s);
+                }
+            }
+        }
+        double sum = sums[0];
+        if (compensations == null || !Double.isFinite(sum))
+        {
+            return sum;
+        }
+        return sum + compensations[0];
+    }
+    
+    /**
+     * Sum up the elements of the given array in the specified range,
+     * and store the result in the given arrays
+     * 
+     * @param array The array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param sums The array that receives the block sums
+     * @param compensations The array that receives the compensations
+     * of the block sums, or <code>null</code> if the summation is 
+     * not compensated
+     * @param block The index of the block
+     */
+    private static void sumBlock(double array[], int min, int max, 
+        double sums[], double compensations[], int block)
+    {
+        if (compensations == null)
+        {
+            // Four independent accumulators, combined in a fixed order,
+            // so that the additions may be pipelined
+            double s0 = 0.0;
+            double s1 = 0.0;
+            double s2 = 0.0;
+            double s3 = 0.0;
+            int i = min;
+            for (; i + 3 < max; i += 4)
+            {
+                s0 += array[i];
+                s1 += array[i + 1];
+                s2 += array[i + 2];
+                s3 += array[i + 3];
+            }
+            for (; i < max; i++)
+            {
+                s0 += array[i];
+            }
+            sums[block] = (s0 + s1) + (s2 + s3);
+            return;
+        }
+        double s = 0.0;
+        double c = 0.0;
+        for (int i = min; i < max; i++)
+        {
+            double v = array[i];
+            double t = s + v;
+            c += twoSumError(s, v, t);
+            s = t;
+        }
+        sums[block] = s;
+        compensations[block] = c;
+    }
+    
+    /**
+     * Sum up the values that the given function provides for the 
+     * specified range, and store the result in the given arrays
+     * 
+     * @param function The function
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param sums The array that receives the block sums
+     * @param compensations The array that receives the compensations
+     * of the block sums, or <code>null</code> if the summation is 
+     * not compensated
+     * @param block The index of the block
+     */
+    private static void sumBlock(IntToDoubleFunction function, 
+        int min, int max, 
+        double sums[], double compensations[], int block)
+    {
+        double s = 0.0;
+        double c = 0.0;
+        for (int i = min; i < max; i++)
+        {
+            double v = function.applyAsDouble(i);
+            double t = s + v;
+            if (compensations != null)
+            {
+                c += twoSumError(s, v, t);
+            }
+            s = t;
+        }
+        sums[block] = s;
+        if (compensations != null)
+        {
+            compensations[block] = c;
+        }
+    }
+    
+    /**
+     * Returns the rounding error of the addition <code>s = a + b</code>,
+     * as in the Neumaier variant of Kahan summation
+     * 
+     * @param a The first summand
+     * @param b The second summand
+     * @param s The rounded sum
+     * @return The rounding error
+     */
+    private static double twoSumError(double a, double b, double s)
+    {
+        if (Math.abs(a) >= Math.abs(b))
+        {
+            return (a - s) + b;
+        }
+        return (b - s) + a;
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private ParallelRangeReductions()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,640 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Utility methods for computing prefix scans (like prefix sums) of 
+ * arrays in parallel.<br>
+ * <br>
+ * The scans are computed in two passes. The array is divided into 
+ * sub-ranges, exactly as it is done in {@link ParallelRangeExecutor#execute(
+ * int, ExecutorService, int, int, ParallelRangeExecutor.RangeExecutor)}. 
+ * In the first pass, the reduction of each sub-range is computed in 
+ * parallel, and the (few) results are scanned sequentially. In the 
+ * second pass, each sub-range is scanned in parallel, starting with the 
+ * reduction of all preceding sub-ranges.<br>
+ * <br>
+ * The operators only have to be associative, but not necessarily 
+ * commutative. Note that for floating-point additions, the result may 
+ * differ from that of a sequential scan, due to the different order of
+ * the operations.<br>
+ * <br>
+ * Exceptions that are thrown by the operators are passed to the caller.
+ */
+public class ParallelScans
+{
+    /**
+     * Computes the inclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>source[0]</code>, 
+     * <code>op(source[0], source[1])</code>, 
+     * <code>op(op(source[0], source[1]), source[2])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void inclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        int source[], int target[], IntBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanInclusive(source, target, 0, n, source[0], operator);
+            return;
+        }
+        int totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            int first = source[min];
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsInt(totals[taskIndex - 1], first);
+            }
+            scanInclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the exclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>identity</code>, 
+     * <code>op(identity, source[0])</code>, 
+     * <code>op(op(identity, source[0]), source[1])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param identity The identity element of the operator
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void exclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        int source[], int target[], int identity, IntBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanExclusive(source, target, 0, n, identity, operator);
+            return;
+        }
+        int totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            int first = identity;
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsInt(identity, totals[taskIndex - 1]);
+            }
+            scanExclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the reductions of the sub-ranges of the given array that
+     * are processed by the tasks, and replaces them with their inclusive 
+     * prefix scan. So the element at index <code>i</code> of the 
+     * returned array is the reduction of all elements of the sub-ranges 
+     * of the tasks <code>0...i</code>.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param operator The operator
+     * @return The totals
+     */
+    private static int[] computeTotals(
+        int parallelism, ExecutorService executorService, 
+        int source[], IntBinaryOperator operator)
+    {
+        int n = source.length;
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, 0, n);
+        int totals[] = new int[numTasks];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            int total = source[min];
+            for (int i = min + 1; i < max; i++)
+            {
+                total = operator.applyAsInt(total, source[i]);
+            }
+            totals[taskIndex] = total;
+        });
+        for (int i = 1; i < numTasks; i++)
+        {
+            totals[i] = operator.applyAsInt(totals[i - 1], totals[i]);
+        }
+        return totals;
+    }
+    
+    /**
+     * Sequentially computes the inclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanInclusive(int source[], int target[], 
+        int min, int max, int first, IntBinaryOperator operator)
+    {
+        int value = first;
+        target[min] = value;
+        for (int i = min + 1; i < max; i++)
+        {
+            value = operator.applyAsInt(value, source[i]);
+            target[i] = value;
+        }
+    }
+    
+    /**
+     * Sequentially computes the exclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanExclusive(int source[], int target[], 
+        int min, int max, int first, IntBinaryOperator operator)
+    {
+        int value = first;
+        for (int i = min; i < max; i++)
+        {
+            int s = source[i];
+            target[i] = value;
+            value = operator.applyAsInt(value, s);
+        }
+    }
+    
+    /**
+     * Computes the inclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>source[0]</code>, 
+     * <code>op(source[0], source[1])</code>, 
+     * <code>op(op(source[0], source[1]), source[2])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void inclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        long source[], long target[], LongBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanInclusive(source, target, 0, n, source[0], operator);
+            return;
+        }
+        long totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            long first = source[min];
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsLong(totals[taskIndex - 1], first);
+            }
+            scanInclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the exclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>identity</code>, 
+     * <code>op(identity, source[0])</code>, 
+     * <code>op(op(identity, source[0]), source[1])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param identity The identity element of the operator
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void exclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        long source[], long target[], long identity, 
+        LongBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanExclusive(source, target, 0, n, identity, operator);
+            return;
+        }
+        long totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            long first = identity;
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsLong(identity, totals[taskIndex - 1]);
+            }
+            scanExclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the reductions of the sub-ranges of the given array that
+     * are processed by the tasks, and replaces them with their inclusive 
+     * prefix scan. So the element at index <code>i</code> of the 
+     * returned array is the reduction of all elements of the sub-ranges 
+     * of the tasks <code>0...i</code>.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param operator The operator
+     * @return The totals
+     */
+    private static long[] computeTotals(
+        int parallelism, ExecutorService executorService, 
+        long source[], LongBinaryOperator operator)
+    {
+        int n = source.length;
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, 0, n);
+        long totals[] = new long[numTasks];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            long total = source[min];
+            for (int i = min + 1; i < max; i++)
+            {
+                total = operator.applyAsLong(total, source[i]);
+            }
+            totals[taskIndex] = total;
+        });
+        for (int i = 1; i < numTasks; i++)
+        {
+            totals[i] = operator.applyAsLong(totals[i - 1], totals[i]);
+        }
+        return totals;
+    }
+    
+    /**
+     * Sequentially computes the inclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanInclusive(long source[], long target[], 
+        int min, int max, long first, LongBinaryOperator operator)
+    {
+        long value = first;
+        target[min] = value;
+        for (int i = min + 1; i < max; i++)
+        {
+            value = operator.applyAsLong(value, source[i]);
+            target[i] = value;
+        }
+    }
+    
+    /**
+     * Sequentially computes the exclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanExclusive(long source[], long target[], 
+        int min, int max, long first, LongBinaryOperator operator)
+    {
+        long value = first;
+        for (int i = min; i < max; i++)
+        {
+            long s = source[i];
+            target[i] = value;
+            value = operator.applyAsLong(value, s);
+        }
+    }
+    
+    /**
+     * Computes the inclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>source[0]</code>, 
+     * <code>op(source[0], source[1])</code>, 
+     * <code>op(op(source[0], source[1]), source[2])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void inclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        double source[], double target[], DoubleBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanInclusive(source, target, 0, n, source[0], operator);
+            return;
+        }
+        double totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            double first = source[min];
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsDouble(totals[taskIndex - 1], first);
+            }
+            scanInclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the exclusive prefix scan of the given source array with 
+     * the given operator, in parallel, and writes it into the given 
+     * target array. After this call, the target array will contain the 
+     * values <code>identity</code>, 
+     * <code>op(identity, source[0])</code>, 
+     * <code>op(op(identity, source[0]), source[1])</code>, and so on.
+     * <br>
+     * <br>
+     * The source and the target may be the same array.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param target The target array
+     * @param identity The identity element of the operator
+     * @param operator The associative operator
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     */
+    public static void exclusiveScan(
+        int parallelism, ExecutorService executorService, 
+        double source[], double target[], double identity, 
+        DoubleBinaryOperator operator)
+    {
+        validate(parallelism, source.length, target.length);
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int n = source.length;
+        if (n == 0)
+        {
+            return;
+        }
+        if (ParallelRangeExecutor.computeNumTasks(parallelism, 0, n) <= 1)
+        {
+            scanExclusive(source, target, 0, n, identity, operator);
+            return;
+        }
+        double totals[] = computeTotals(
+            parallelism, executorService, source, operator);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            double first = identity;
+            if (taskIndex > 0)
+            {
+                first = operator.applyAsDouble(
+                    identity, totals[taskIndex - 1]);
+            }
+            scanExclusive(source, target, min, max, first, operator);
+        });
+    }
+    
+    /**
+     * Computes the reductions of the sub-ranges of the given array that
+     * are processed by the tasks, and replaces them with their inclusive 
+     * prefix scan. So the element at index <code>i</code> of the 
+     * returned array is the reduction of all elements of the sub-ranges 
+     * of the tasks <code>0...i</code>.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param source The source array
+     * @param operator The operator
+     * @return The totals
+     */
+    private static double[] computeTotals(
+        int parallelism, ExecutorService executorService, 
+        double source[], DoubleBinaryOperator operator)
+    {
+        int n = source.length;
+        int numTasks = ParallelRangeExecutor.computeNumTasks(
+            parallelism, 0, n);
+        double totals[] = new double[numTasks];
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, n, (taskIndex, min, max) -> 
+        {
+            double total = source[min];
+            for (int i = min + 1; i < max; i++)
+            {
+                total = operator.applyAsDouble(total, source[i]);
+            }
+            totals[taskIndex] = total;
+        });
+        for (int i = 1; i < numTasks; i++)
+        {
+            totals[i] = operator.applyAsDouble(totals[i - 1], totals[i]);
+        }
+        return totals;
+    }
+    
+    /**
+     * Sequentially computes the inclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanInclusive(double source[], double target[], 
+        int min, int max, double first, DoubleBinaryOperator operator)
+    {
+        double value = first;
+        target[min] = value;
+        for (int i = min + 1; i < max; i++)
+        {
+            value = operator.applyAsDouble(value, source[i]);
+            target[i] = value;
+        }
+    }
+    
+    /**
+     * Sequentially computes the exclusive scan of the specified range
+     * 
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param first The value for the first element of the range
+     * @param operator The operator
+     */
+    private static void scanExclusive(double source[], double target[], 
+        int min, int max, double first, DoubleBinaryOperator operator)
+    {
+        double value = first;
+        for (int i = min; i < max; i++)
+        {
+            double s = source[i];
+            target[i] = value;
+            value = operator.applyAsDouble(value, s);
+        }
+    }
+    
+    /**
+     * Validate the given parallelism and array lengths
+     * 
+     * @param parallelism The parallelism
+     * @param sourceLength The source length
+     * @param targetLength The target length
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target length is smaller than the source length
+     */
+    private static void validate(
+        int parallelism, int sourceLength, int targetLength)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive, but is " + parallelism);
+        }
+        if (targetLength < sourceLength)
+        {
+            throw new IllegalArgumentException(
+                "The target length is " + targetLength + ", but must be " 
+                + "at least the source length, which is " + sourceLength);
+        }
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private ParallelScans()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utility class that can perform an execution on a 2D or 3D index space
+ * in parallel. The index space is divided into rectangular tiles (or 
+ * boxes, in 3D), and the execution for these tiles is delegated to 
+ * implementations of the {@link TileExecutor2D} or {@link TileExecutor3D}
+ * interface.<br>
+ * <br>
+ * The tiles are handed out to a fixed number of tasks dynamically: Each 
+ * task processes the next tile that has not been processed yet, until
+ * all tiles are processed. The tiles are handed out in row-major order, 
+ * with the x-coordinate varying fastest.<br>
+ * <br>
+ * The bounds of the index space are given as <code>long</code> values,
+ * so that the total number of elements is not limited to the range of 
+ * <code>int</code>.<br>
+ * <br>
+ * Exceptions that are thrown by the tile executors are passed to the 
+ * caller. When a tile executor throws an exception, then no further 
+ * tiles will be started.
+ */
+public class ParallelTileExecutor
+{
+    /**
+     * The default size of a tile in each dimension, for the 2D execution
+     */
+    private static final int DEFAULT_TILE_SIZE_2D = 64;
+    
+    /**
+     * The default size of a tile in each dimension, for the 3D execution
+     */
+    private static final int DEFAULT_TILE_SIZE_3D = 16;
+    
+    /**
+     * An interface that describes an execution that can be applied to
+     * a 2D tile
+     */
+    public static interface TileExecutor2D
+    {
+        /**
+         * Perform the execution on the specified tile
+         * 
+         * @param taskIndex The index of the task. No two tiles with the
+         * same task index will be processed concurrently. So this index 
+         * may be used to refer to data that is specific for one task.
+         * @param minX The minimum x-index, inclusive
+         * @param minY The minimum y-index, inclusive
+         * @param maxX The maximum x-index, exclusive
+         * @param maxY The maximum y-index, exclusive
+         */
+        void execute(int taskIndex, 
+            long minX, long minY, long maxX, long maxY);
+    }
+    
+    /**
+     * An interface that describes an execution that can be applied to
+     * a 3D tile
+     */
+    public static interface TileExecutor3D
+    {
+        /**
+         * Perform the execution on the specified tile
+         * 
+         * @param taskIndex The index of the task. No two tiles with the
+         * same task index will be processed concurrently. So this index 
+         * may be used to refer to data that is specific for one task.
+         * @param minX The minimum x-index, inclusive
+         * @param minY The minimum y-index, inclusive
+         * @param minZ The minimum z-index, inclusive
+         * @param maxX The maximum x-index, exclusive
+         * @param maxY The maximum y-index, exclusive
+         * @param maxZ The maximum z-index, exclusive
+         */
+        void execute(int taskIndex, 
+            long minX, long minY, long minZ, 
+            long maxX, long maxY, long maxZ);
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link TileExecutor2D}
+     * on the specified index space, with a default tile size of 64x64.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the tiles.
+     * @param executorService The executor service
+     * @param globalMinX The global minimum x-index, inclusive
+     * @param globalMinY The global minimum y-index, inclusive
+     * @param globalMaxX The global maximum x-index, exclusive
+     * @param globalMaxY The global maximum y-index, exclusive
+     * @param tileExecutor The {@link TileExecutor2D}
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or any global minimum is larger than the respective maximum
+     * @throws ArithmeticException If the number of tiles does not fit
+     * into a <code>long</code> value
+     */
+    public static void execute(
+        int parallelism, ExecutorService executorService, 
+        long globalMinX, long globalMinY, long globalMaxX, long globalMaxY,
+        TileExecutor2D tileExecutor)
+    {
+        execute(parallelism, executorService, 
+            globalMinX, globalMinY, globalMaxX, globalMaxY, 
+            DEFAULT_TILE_SIZE_2D, DEFAULT_TILE_SIZE_2D, tileExecutor);
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link TileExecutor2D}
+     * on the specified index space, with the given tile size. The tiles
+     * at the borders of the index space may be smaller than the tile size.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the tiles.
+     * @param executorService The executor service
+     * @param globalMinX The global minimum x-index, inclusive
+     * @param globalMinY The global minimum y-index, inclusive
+     * @param globalMaxX The global maximum x-index, exclusive
+     * @param globalMaxY The global maximum y-index, exclusive
+     * @param tileSizeX The size of a tile in x-direction
+     * @param tileSizeY The size of a tile in y-direction
+     * @param tileExecutor The {@link TileExecutor2D}
+     * @throws IllegalArgumentException If the parallelism or any tile 
+     * size is not positive, or any global minimum is larger than the 
+     * respective maximum
+     * @throws ArithmeticException If the number of tiles does not fit
+     * into a <code>long</code> value
+     */
+    public static void execute(
+        int parallelism, ExecutorService executorService, 
+        long globalMinX, long globalMinY, long globalMaxX, long globalMaxY,
+        int tileSizeX, int tileSizeY,
+        TileExecutor2D tileExecutor)
+    {
+        validate(parallelism);
+        final long numTilesX = 
+            computeNumTiles("x", globalMinX, globalMaxX, tileSizeX);
+        final long numTilesY = 
+            computeNumTiles("y", globalMinY, globalMaxY, tileSizeY);
+        final long numTiles = Math.multiplyExact(numTilesX, numTilesY);
+        executeTiles(parallelism, executorService, numTiles, 
+            (taskIndex, tileIndex) -> 
+        {
+            long tileX = tileIndex % numTilesX;
+            long tileY = tileIndex / numTilesX;
+            long minX = globalMinX + tileX * tileSizeX;
+            long minY = globalMinY + tileY * tileSizeY;
+            long maxX = computeTileMax(minX, globalMaxX, tileSizeX);
+            long maxY = computeTileMax(minY, globalMaxY, tileSizeY);
+            tileExecutor.execute(taskIndex, minX, minY, maxX, maxY);
+        });
+    }
+
+    /**
+     * Perform a parallel execution of the given {@link TileExecutor3D}
+     * on the specified index space, with a default tile size of 16x16x16.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the tiles.
+     * @param executorService The executor service
+     * @param globalMinX The global minimum x-index, inclusive
+     * @param globalMinY The global minimum y-index, inclusive
+     * @param globalMinZ The global minimum z-index, inclusive
+     * @param globalMaxX The global maximum x-index, exclusive
+     * @param globalMaxY The global maximum y-index, exclusive
+     * @param globalMaxZ The global maximum z-index, exclusive
+     * @param tileExecutor The {@link TileExecutor3D}
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or any global minimum is larger than the respective maximum
+     * @throws ArithmeticException If the number of tiles does not fit
+     * into a <code>long</code> value
+     */
+    public static void execute(
+        int parallelism, ExecutorService executorService, 
+        long globalMinX, long globalMinY, long globalMinZ, 
+        long globalMaxX, long globalMaxY, long globalMaxZ,
+        TileExecutor3D tileExecutor)
+    {
+        execute(parallelism, executorService, 
+            globalMinX, globalMinY, globalMinZ, 
+            globalMaxX, globalMaxY, globalMaxZ,
+            DEFAULT_TILE_SIZE_3D, DEFAULT_TILE_SIZE_3D, DEFAULT_TILE_SIZE_3D, 
+            tileExecutor);
+    }
+    
+    /**
+     * Perform a parallel execution of the given {@link TileExecutor3D}
+     * on the specified index space, with the given tile size. The tiles
+     * at the borders of the index space may be smaller than the tile size.
+     * 
+     * @param parallelism The parallelism. This is the maximum number of 
+     * tasks that will be created in order to process the tiles.
+     * @param executorService The executor service
+     * @param globalMinX The global minimum x-index, inclusive
+     * @param globalMinY The global minimum y-index, inclusive
+     * @param globalMinZ The global minimum z-index, inclusive
+     * @param globalMaxX The global maximum x-index, exclusive
+     * @param globalMaxY The global maximum y-index, exclusive
+     * @param globalMaxZ The global maximum z-index, exclusive
+     * @param tileSizeX The size of a tile in x-direction
+     * @param tileSizeY The size of a tile in y-direction
+     * @param tileSizeZ The size of a tile in z-direction
+     * @param tileExecutor The {@link TileExecutor3D}
+     * @throws IllegalArgumentException If the parallelism or any tile 
+     * size is not positive, or any global minimum is larger than the 
+     * respective maximum
+     * @throws ArithmeticException If the number of tiles does not fit
+     * into a <code>long</code> value
+     */
+    public static void execute(
+        int parallelism, ExecutorService executorService, 
+        long globalMinX, long globalMinY, long globalMinZ, 
+        long globalMaxX, long globalMaxY, long globalMaxZ,
+        int tileSizeX, int tileSizeY, int tileSizeZ,
+        TileExecutor3D tileExecutor)
+    {
+        validate(parallelism);
+        final long numTilesX = 
+            computeNumTiles("x", globalMinX, globalMaxX, tileSizeX);
+        final long numTilesY = 
+            computeNumTiles("y", globalMinY, globalMaxY, tileSizeY);
+        final long numTilesZ = 
+            computeNumTiles("z", globalMinZ, globalMaxZ, tileSizeZ);
+        final long numTilesXY = Math.multiplyExact(numTilesX, numTilesY);
+        final long numTiles = Math.multiplyExact(numTilesXY, numTilesZ);
+        executeTiles(parallelism, executorService, numTiles, 
+            (taskIndex, tileIndex) -> 
+        {
+            long tileX = tileIndex % numTilesX;
+            long tileY = (tileIndex / numTilesX) % numTilesY;
+            long tileZ = tileIndex / numTilesXY;
+            long minX = globalMinX + tileX * tileSizeX;
+            long minY = globalMinY + tileY * tileSizeY;
+            long minZ = globalMinZ + tileZ * tileSizeZ;
+            long maxX = computeTileMax(minX, globalMaxX, tileSizeX);
+            long maxY = computeTileMax(minY, globalMaxY, tileSizeY);
+            long maxZ = computeTileMax(minZ, globalMaxZ, tileSizeZ);
+            tileExecutor.execute(taskIndex, 
+                minX, minY, minZ, maxX, maxY, maxZ);
+        });
+    }
+    
+    /**
+     * Interface for the execution of a single tile
+     */
+    private static interface TileIndexExecutor
+    {
+        /**
+         * Execute the tile with the given index
+         * 
+         * @param taskIndex The task index
+         * @param tileIndex The tile index
+         */
+        void execute(int taskIndex, long tileIndex);
+    }
+    
+    /**
+     * Execute the specified number of tiles with the given 
+     * {@link TileIndexExecutor}, handing out the tiles dynamically
+     * to the tasks
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param numTiles The number of tiles
+     * @param tileIndexExecutor The {@link TileIndexExecutor}
+     */
+    private static void executeTiles(
+        int parallelism, ExecutorService executorService, 
+        final long numTiles, final TileIndexExecutor tileIndexExecutor)
+    {
+        if (numTiles == 0)
+        {
+            return;
+        }
+        int numTasks = (int) Math.min(parallelism, numTiles);
+        final AtomicLong nextTileIndex = new AtomicLong();
+        ParallelRangeExecutor.executeChecked(numTasks, executorService, 
+            0, numTasks, (taskIndex, min, max) -> 
+        {
+            try
+            {
+                while (true)
+                {
+                    long tileIndex = nextTileIndex.getAndIncrement();
+                    if (tileIndex >= numTiles)
+                    {
+                        break;
+                    }
+                    tileIndexExecutor.execute(taskIndex, tileIndex);
+                }
+            }
+            catch (RuntimeException | Error e)
+            {
+                // Prevent the other tasks from starting new tiles
+                nextTileIndex.set(numTiles);
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * Compute the number of tiles for the given range in one dimension
+     * 
+     * @param name The name of the dimension
+     * @param globalMin The global minimum
+     * @param globalMax The global maximum
+     * @param tileSize The tile size
+     * @return The number of tiles
+     * @throws IllegalArgumentException If the tile size is not positive,
+     * or the global minimum is larger than the global maximum
+     * @throws ArithmeticException If the number of tiles does not fit
+     * into a <code>long</code> value
+     */
+    private static long computeNumTiles(
+        String name, long globalMin, long globalMax, int tileSize)
+    {
+        if (tileSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The tile size in " + name + "-direction must be positive, "
+                + "but is " + tileSize);
+        }
+        if (globalMin > globalMax)
+        {
+            throw new IllegalArgumentException(
+                "The global minimum may not be larger than the global " + 
+                "maximum. Global minimum " + name + " is " + globalMin + 
+                ", global maximum " + name + " is " + globalMax);
+        }
+        
+        // The range may be larger than Long.MAX_VALUE, so it is treated
+        // as an unsigned value
+        long range = globalMax - globalMin;
+        long numTiles = Long.divideUnsigned(range, tileSize) 
+            + (Long.remainderUnsigned(range, tileSize) == 0 ? 0 : 1);
+        if (numTiles < 0)
+        {
+            throw new ArithmeticException(
+                "The number of tiles in " + name + "-direction does not " 
+                + "fit into a long value");
+        }
+        return numTiles;
+    }
+    
+    /**
+     * Compute the maximum (exclusive) of the tile that starts at the 
+     * given minimum, without overflowing when the global maximum is 
+     * close to <code>Long.MAX_VALUE</code>
+     * 
+     * @param min The minimum of the tile
+     * @param globalMax The global maximum
+     * @param tileSize The tile size
+     * @return The maximum of the tile
+     */
+    private static long computeTileMax(long min, long globalMax, int tileSize)
+    {
+        if (Long.compareUnsigned(globalMax - min, tileSize) <= 0)
+        {
+            return globalMax;
+        }
+        return min + tileSize;
+    }
+    
+    /**
+     * Validate the given parallelism
+     * 
+     * @param parallelism The parallelism
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    private static void validate(int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive, but is " + parallelism);
+        }
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private ParallelTileExecutor()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.nio.ByteBuffer;
+
+import de.javagl.common.concurrent.ParallelRangeExecutor.RangeExecutor;
+
+/**
+ * A pool of reusable scratch buffers that are associated with the 
+ * <code>taskIndex</code> of a {@link RangeExecutor}.<br>
+ * <br>
+ * The methods of {@link ParallelRangeExecutor} guarantee that no two
+ * sub-ranges with the same <code>taskIndex</code> are processed 
+ * concurrently. So a {@link RangeExecutor} may obtain temporary arrays 
+ * or buffers from this class, for its <code>taskIndex</code>, instead 
+ * of allocating them in each call. For example:
+ * <pre><code>
+ * ScratchBuffers scratch = new ScratchBuffers(parallelism);
+ * for (int iteration = 0; iteration &lt; n; iteration++)
+ * {
+ *     ParallelRangeExecutor.execute(parallelism, executorService, 
+ *         0, size, (taskIndex, min, max) -&gt;
+ *     {
+ *         double temp[] = scratch.getDoubles(taskIndex, max - min);
+ *         ...
+ *     });
+ * }
+ * </code></pre>
+ * The buffers only grow: When a buffer is requested that is larger
+ * than the current buffer for the respective <code>taskIndex</code>,
+ * then a new, larger buffer is allocated, and otherwise, the existing
+ * buffer is returned. So in the steady state of a loop like the one
+ * above, no allocations take place. The contents of the returned buffers
+ * are undefined, and the returned arrays may be longer than the 
+ * requested length.<br>
+ * <br>
+ * This class is not thread-safe. The buffers for one 
+ * <code>taskIndex</code> may only be used by one thread at a time. 
+ * Buffers for different <code>taskIndex</code> values may be used by 
+ * different threads concurrently. 
+ */
+public final class ScratchBuffers
+{
+    /**
+     * The <code>double</code> arrays, for each task index
+     */
+    private final double doubles[][];
+    
+    /**
+     * The <code>int</code> arrays, for each task index
+     */
+    private final int ints[][];
+    
+    /**
+     * The byte buffers, for each task index
+     */
+    private final ByteBuffer byteBuffers[];
+    
+    /**
+     * Whether the byte buffers should be direct buffers
+     */
+    private final boolean direct;
+    
+    /**
+     * Creates new scratch buffers for the given number of task indices,
+     * using heap byte buffers
+     * 
+     * @param numTaskIndices The number of task indices. This is usually
+     * the <code>parallelism</code> of the execution.
+     * @throws IllegalArgumentException If the number of task indices 
+     * is negative
+     */
+    public ScratchBuffers(int numTaskIndices)
+    {
+        this(numTaskIndices, false);
+    }
+    
+    /**
+     * Creates new scratch buffers for the given number of task indices
+     * 
+     * @param numTaskIndices The number of task indices. This is usually
+     * the <code>parallelism</code> of the execution.
+     * @param direct Whether the byte buffers should be direct buffers
+     * @throws IllegalArgumentException If the number of task indices 
+     * is negative
+     */
+    public ScratchBuffers(int numTaskIndices, boolean direct)
+    {
+        if (numTaskIndices < 0)
+        {
+            throw new IllegalArgumentException(
+                "The number of task indices may not be negative, but is " 
+                + numTaskIndices);
+        }
+        this.doubles = new double[numTaskIndices][];
+        this.ints = new int[numTaskIndices][];
+        this.byteBuffers = new ByteBuffer[numTaskIndices];
+        this.direct = direct;
+    }
+    
+    /**
+     * Returns the number of task indices that these buffers are 
+     * created for
+     * 
+     * @return The number of task indices
+     */
+    public int getNumTaskIndices()
+    {
+        return doubles.length;
+    }
+    
+    /**
+     * Returns a <code>double</code> array for the given task index, that 
+     * has at least the given length.
+     * 
+     * @param taskIndex The task index
+     * @param minLength The minimum length
+     * @return The array
+     * @throws IndexOutOfBoundsException If the task index is negative 
+     * or not smaller than the number of task indices
+     * @throws IllegalArgumentException If the minimum length is negative
+     */
+    public double[] getDoubles(int taskIndex, int minLength)
+    {
+        validate(taskIndex, minLength);
+        double array[] = doubles[taskIndex];
+        if (array == null || array.length < minLength)
+        {
+            int oldLength = array == null ? 0 : array.length;
+            array = new double[grow(oldLength, minLength)];
+            doubles[taskIndex] = array;
+        }
+        return array;
+    }
+    
+    /**
+     * Returns an <code>int</code> array for the given task index, that 
+     * has at least the given length.
+     * 
+     * @param taskIndex The task index
+     * @param minLength The minimum length
+     * @return The array
+     * @throws IndexOutOfBoundsException If the task index is negative 
+     * or not smaller than the number of task indices
+     * @throws IllegalArgumentException If the minimum length is negative
+     */
+    public int[] getInts(int taskIndex, int minLength)
+    {
+        validate(taskIndex, minLength);
+        int array[] = ints[taskIndex];
+        if (array == null || array.length < minLength)
+        {
+            int oldLength = array == null ? 0 : array.length;
+            array = new int[grow(oldLength, minLength)];
+            ints[taskIndex] = array;
+        }
+        return array;
+    }
+    
+    /**
+     * Returns a byte buffer for the given task index, that has at least
+     * the given capacity. The returned buffer will have a position of 0
+     * and a limit that is equal to the given capacity. The byte order
+     * of the buffer is retained between calls.
+     * 
+     * @param taskIndex The task index
+     * @param minCapacity The minimum capacity
+     * @return The byte buffer
+     * @throws IndexOutOfBoundsException If the task index is negative 
+     * or not smaller than the number of task indices
+     * @throws IllegalArgumentException If the minimum capacity is negative
+     */
+    public ByteBuffer getByteBuffer(int taskIndex, int minCapacity)
+    {
+        validate(taskIndex, minCapacity);
+        ByteBuffer buffer = byteBuffers[taskIndex];
+        if (buffer == null || buffer.capacity() < minCapacity)
+        {
+            int oldCapacity = buffer == null ? 0 : buffer.capacity();
+            int newCapacity = grow(oldCapacity, minCapacity);
+            ByteBuffer newBuffer = direct ? 
+                ByteBuffer.allocateDirect(newCapacity) : 
+                ByteBuffer.allocate(newCapacity);
+            if (buffer != null)
+            {
+                newBuffer.order(buffer.order());
+            }
+            buffer = newBuffer;
+            byteBuffers[taskIndex] = buffer;
+        }
+        buffer.clear();
+        buffer.limit(minCapacity);
+        return buffer;
+    }
+    
+    /**
+     * Compute the new length for a buffer that has to be grown from the
+     * given old length to at least the given minimum length. 
+     * 
+     * @param oldLength The old length
+     * @param minLength The minimum length
+     * @return The new length
+     */
+    private static int grow(int oldLength, int minLength)
+    {
+        long grownLength = oldLength + (long) (oldLength >> 1);
+        return (int) Math.max(minLength, 
+            Math.min(grownLength, Integer.MAX_VALUE - 8));
+    }
+    
+    /**
+     * Validate the given task index and length
+     * 
+     * @param taskIndex The task index
+     * @param minLength The length
+     * @throws IndexOutOfBoundsException If the task index is negative 
+     * or not smaller than the number of task indices
+     * @throws IllegalArgumentException If the length is negative
+     */
+    private void validate(int taskIndex, int minLength)
+    {
+        if (taskIndex < 0 || taskIndex >= doubles.length)
+        {
+            throw new IndexOutOfBoundsException(
+                "The task index must be in [0," + doubles.length 
+                + "), but is " + taskIndex);
+        }
+        if (minLength < 0)
+        {
+            throw new IllegalArgumentException(
+                "The length may not be negative, but is " + minLength);
+        }
+    }
+}
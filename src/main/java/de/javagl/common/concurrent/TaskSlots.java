@@ -0,0 +1,118 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed set of task slots that may be acquired and released by 
+ * threads. A slot that has been acquired by one thread will not be
+ * handed out to another thread before it was released. This allows
+ * the index of a slot to be used as the <code>taskIndex</code> of a
+ * {@link ParallelRangeExecutor.RangeExecutor}, even when the sub-ranges 
+ * are not executed by a fixed set of tasks.
+ */
+final class TaskSlots
+{
+    /**
+     * The flags indicating which slot is currently acquired
+     */
+    private final AtomicIntegerArray acquired;
+    
+    /**
+     * Creates a new instance with the given number of slots
+     * 
+     * @param numSlots The number of slots
+     * @throws IllegalArgumentException If the number is not positive
+     */
+    TaskSlots(int numSlots)
+    {
+        if (numSlots <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The number of slots must be positive, but is " + numSlots);
+        }
+        this.acquired = new AtomicIntegerArray(numSlots);
+    }
+    
+    /**
+     * Returns the number of slots
+     * 
+     * @return The number of slots
+     */
+    int getNumSlots()
+    {
+        return acquired.length();
+    }
+    
+    /**
+     * Acquire a slot. If all slots are currently acquired, then this
+     * method will yield until one of them is released.<br>
+     * <br>
+     * Threads of a <code>ForkJoinPool</code> will preferably receive
+     * the slot that corresponds to their pool index, so that one 
+     * thread will usually use the same slot during one execution.
+     * 
+     * @return The index of the slot
+     */
+    int acquire()
+    {
+        int numSlots = acquired.length();
+        int start = numSlots - 1;
+        Thread thread = Thread.currentThread();
+        if (thread instanceof ForkJoinWorkerThread)
+        {
+            ForkJoinWorkerThread worker = (ForkJoinWorkerThread) thread;
+            start = worker.getPoolIndex() % numSlots;
+        }
+        while (true)
+        {
+            for (int i = 0; i < numSlots; i++)
+            {
+                int slot = (start + i) % numSlots;
+                if (acquired.get(slot) == 0 && 
+                    acquired.compareAndSet(slot, 0, 1))
+                {
+                    return slot;
+                }
+            }
+            Thread.yield();
+        }
+    }
+    
+    /**
+     * Release the given slot, which must have been obtained with
+     * {@link #acquire()} by the calling thread
+     * 
+     * @param slot The slot
+     */
+    void release(int slot)
+    {
+        acquired.set(slot, 0);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+/**
+ * A runnable that stores the time when it was submitted to an executor, 
+ * and when its execution started. The start time is written and read by 
+ * the executor, in its <code>beforeExecute</code> and 
+ * <code>afterExecute</code> methods.
+ */
+final class TimedRunnable implements Runnable
+{
+    /**
+     * The delegate
+     */
+    private final Runnable delegate;
+    
+    /**
+     * The time when this runnable was submitted, in nanoseconds
+     */
+    final long submitNanos;
+    
+    /**
+     * The time when the execution started, in nanoseconds
+     */
+    long startNanos;
+    
+    /**
+     * The CPU time of the executing thread when the execution started, 
+     * in nanoseconds, or -1 if it is not known
+     */
+    long startCpuNanos;
+    
+    /**
+     * The ID of the executing thread
+     */
+    long threadId;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param delegate The delegate
+     */
+    TimedRunnable(Runnable delegate)
+    {
+        this.delegate = delegate;
+        this.submitNanos = System.nanoTime();
+        this.startCpuNanos = -1;
+    }
+    
+    @Override
+    public void run()
+    {
+        delegate.run();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.concurrent.RecursiveAction;
+
+import de.javagl.common.concurrent.ParallelRangeExecutor.RangeExecutor;
+
+/**
+ * A <code>RecursiveAction</code> that recursively splits a range into 
+ * chunks, and passes these chunks to a {@link RangeExecutor}. The 
+ * <code>taskIndex</code> that is passed to the {@link RangeExecutor}
+ * is the index of a slot that is obtained from a {@link TaskSlots}
+ * instance.
+ */
+final class WorkStealingRangeTask extends RecursiveAction
+{
+    /**
+     * Serial UID
+     */
+    private static final long serialVersionUID = 2962374626163393218L;
+
+    /**
+     * The slots from which the task indices are obtained
+     */
+    private final TaskSlots taskSlots;
+    
+    /**
+     * The minimum index, inclusive
+     */
+    private final int min;
+    
+    /**
+     * The maximum index, exclusive
+     */
+    private final int max;
+    
+    /**
+     * The size of the range up to which it will not be split further
+     */
+    private final int chunkSize;
+    
+    /**
+     * The {@link RangeExecutor}
+     */
+    private final RangeExecutor rangeExecutor;
+    
+    /**
+     * The next task in the list of tasks that have been forked by the
+     * task that created this task
+     */
+    private WorkStealingRangeTask next;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param taskSlots The {@link TaskSlots}
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @param chunkSize The size of the range up to which it will not 
+     * be split further
+     * @param rangeExecutor The {@link RangeExecutor}
+     */
+    WorkStealingRangeTask(TaskSlots taskSlots, int min, int max, 
+        int chunkSize, RangeExecutor rangeExecutor)
+    {
+        this.taskSlots = taskSlots;
+        this.min = min;
+        this.max = max;
+        this.chunkSize = chunkSize;
+        this.rangeExecutor = rangeExecutor;
+    }
+
+    @Override
+    protected void compute()
+    {
+        // Fork the upper halves, so that they may be stolen by idle 
+        // workers, and continue splitting the lower half locally
+        int localMax = max;
+        WorkStealingRangeTask forked = null;
+        while (localMax - min > chunkSize)
+        {
+            int mid = min + (localMax - min) / 2;
+            WorkStealingRangeTask task = new WorkStealingRangeTask(
+                taskSlots, mid, localMax, chunkSize, rangeExecutor);
+            task.fork();
+            task.next = forked;
+            forked = task;
+            localMax = mid;
+        }
+        int slot = taskSlots.acquire();
+        try
+        {
+            rangeExecutor.execute(slot, min, localMax);
+        }
+        finally
+        {
+            taskSlots.release(slot);
+        }
+        while (forked != null)
+        {
+            // If the forked task was not stolen, then it will be 
+            // executed by this thread as part of the join
+            forked.join();
+            forked = forked.next;
+        }
+    }
+}
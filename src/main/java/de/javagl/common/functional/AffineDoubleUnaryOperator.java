@@ -0,0 +1,103 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Implementation of a {@link DoubleUnaryOperator} that is an affine 
+ * transformation, returning <code>factor * value + addend</code>
+ */
+final class AffineDoubleUnaryOperator 
+    implements DoubleUnaryOperator, DoubleArrayOperator
+{
+    /**
+     * The factor
+     */
+    private final double factor;
+    
+    /**
+     * The addend
+     */
+    private final double addend;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param factor The factor
+     * @param addend The addend
+     */
+    AffineDoubleUnaryOperator(double factor, double addend)
+    {
+        this.factor = factor;
+        this.addend = addend;
+    }
+    
+    @Override
+    public double applyAsDouble(double value)
+    {
+        return factor * value + addend;
+    }
+    
+    @Override
+    public void applyToArray(double source[], int sourceOffset, 
+        double target[], int targetOffset, int length)
+    {
+        final double f = factor;
+        final double a = addend;
+        for (int i = 0; i < length; i++)
+        {
+            target[targetOffset + i] = f * source[sourceOffset + i] + a;
+        }
+    }
+    
+    /**
+     * Apply this operator to the specified elements of the source array,
+     * clamp the results to the interval [min,max], and write them into 
+     * the target array, in a single loop
+     * 
+     * @param source The source array
+     * @param sourceOffset The offset in the source array
+     * @param target The target array
+     * @param targetOffset The offset in the target array
+     * @param length The number of elements
+     * @param min The minimum value
+     * @param max The maximum value
+     */
+    void applyToArrayClamped(double source[], int sourceOffset, 
+        double target[], int targetOffset, int length, 
+        double min, double max)
+    {
+        final double f = factor;
+        final double a = addend;
+        for (int i = 0; i < length; i++)
+        {
+            double value = f * source[sourceOffset + i] + a;
+            target[targetOffset + i] = Math.max(min, Math.min(max, value));
+        }
+    }
+}
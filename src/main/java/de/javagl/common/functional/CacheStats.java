@@ -0,0 +1,206 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+/**
+ * An immutable snapshot of the statistics of a cache, like a 
+ * {@link CachingBiFunction} or a {@link ConcurrentCachingBiFunction}.
+ * All durations are given in nanoseconds.
+ */
+public final class CacheStats
+{
+    /**
+     * The number of lookups that found a cached value
+     */
+    private final long hitCount;
+    
+    /**
+     * The number of lookups that did not find a cached value
+     */
+    private final long missCount;
+    
+    /**
+     * The number of entries that have been evicted
+     */
+    private final long evictionCount;
+    
+    /**
+     * The number of times that a value was computed by the delegate
+     */
+    private final long loadCount;
+    
+    /**
+     * The total time that was spent in the delegate
+     */
+    private final long totalLoadTime;
+    
+    /**
+     * The number of entries in the cache
+     */
+    private final long size;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param hitCount The hit count
+     * @param missCount The miss count
+     * @param evictionCount The eviction count
+     * @param loadCount The load count
+     * @param totalLoadTime The total load time
+     * @param size The size
+     */
+    CacheStats(long hitCount, long missCount, long evictionCount, 
+        long loadCount, long totalLoadTime, long size)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the number of lookups that found a cached value. For a
+     * {@link ConcurrentCachingBiFunction}, this includes the lookups
+     * that waited for a value that was computed by another thread.
+     * 
+     * @return The hit count
+     */
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+    
+    /**
+     * Returns the number of lookups that did not find a cached value
+     * 
+     * @return The miss count
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+    
+    /**
+     * Returns the total number of lookups
+     * 
+     * @return The request count
+     */
+    public long getRequestCount()
+    {
+        return hitCount + missCount;
+    }
+    
+    /**
+     * Returns the ratio of lookups that found a cached value. If there
+     * have not been any lookups, then this is 1.0.
+     * 
+     * @return The hit rate, in [0,1]
+     */
+    public double getHitRate()
+    {
+        long requestCount = getRequestCount();
+        if (requestCount == 0)
+        {
+            return 1.0;
+        }
+        return (double) hitCount / requestCount;
+    }
+    
+    /**
+     * Returns the number of entries that have been removed because the
+     * cache reached its maximum size, because their values have been 
+     * collected by the garbage collector, or because they have expired
+     * 
+     * @return The eviction count
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount;
+    }
+    
+    /**
+     * Returns the number of times that a value was computed by the
+     * delegate, including computations that caused an exception
+     * 
+     * @return The load count
+     */
+    public long getLoadCount()
+    {
+        return loadCount;
+    }
+    
+    /**
+     * Returns the total time that was spent computing values with the
+     * delegate
+     * 
+     * @return The total load time
+     */
+    public long getTotalLoadTime()
+    {
+        return totalLoadTime;
+    }
+    
+    /**
+     * Returns the average time that was spent computing a value with 
+     * the delegate. If no values have been computed, then this is 0.0.
+     * 
+     * @return The average load time
+     */
+    public double getAverageLoadTime()
+    {
+        if (loadCount == 0)
+        {
+            return 0.0;
+        }
+        return (double) totalLoadTime / loadCount;
+    }
+    
+    /**
+     * Returns the number of entries in the cache at the time when this
+     * snapshot was taken
+     * 
+     * @return The size
+     */
+    public long getSize()
+    {
+        return size;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "CacheStats[" 
+            + "hitCount=" + hitCount + ", "
+            + "missCount=" + missCount + ", "
+            + "evictionCount=" + evictionCount + ", "
+            + "loadCount=" + loadCount + ", "
+            + "totalLoadTime=" + totalLoadTime + ", "
+            + "size=" + size + "]";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Internal class for recording the statistics of a cache. The counters
+ * are striped, so that recording does not cause contention when the 
+ * cache is used by multiple threads.
+ */
+final class CacheStatsCounter
+{
+    /**
+     * The hit count
+     */
+    private final LongAdder hitCount = new LongAdder();
+    
+    /**
+     * The miss count
+     */
+    private final LongAdder missCount = new LongAdder();
+    
+    /**
+     * The load count
+     */
+    private final LongAdder loadCount = new LongAdder();
+    
+    /**
+     * The total load time, in nanoseconds
+     */
+    private final LongAdder totalLoadTime = new LongAdder();
+    
+    /**
+     * Record a lookup that found a cached value
+     */
+    void recordHit()
+    {
+        hitCount.increment();
+    }
+    
+    /**
+     * Record a lookup that did not find a cached value
+     */
+    void recordMiss()
+    {
+        missCount.increment();
+    }
+    
+    /**
+     * Record a computation of a value by the delegate
+     * 
+     * @param loadTime The time that the computation took, in nanoseconds
+     */
+    void recordLoad(long loadTime)
+    {
+        loadCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+    
+    /**
+     * Create a snapshot of the current statistics
+     * 
+     * @param evictionCount The eviction count
+     * @param size The size of the cache
+     * @return The snapshot
+     */
+    CacheStats snapshot(long evictionCount, long size)
+    {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 
+            evictionCount, loadCount.sum(), totalLoadTime.sum(), size);
+    }
+}
@@ -0,0 +1,1360 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Internal class for the storage of cache entries, with an optional 
+ * maximum size and an {@link EvictionPolicy}.<br>
+ * <br>
+ * The entries are stored in {@link Node} objects, which are identified 
+ * by two keys. The nodes are stored in a hash table with chaining, so 
+ * that looking up the node for a pair of keys does not require the 
+ * allocation of a key object. Each node is also an element of a doubly 
+ * linked {@link NodeList}, so that the nodes can be reordered and 
+ * evicted in constant time:
+ * <ul>
+ *   <li>
+ *     For {@link EvictionPolicy#LRU}, all nodes are stored in a single
+ *     list, in access order
+ *   </li>
+ *   <li>
+ *     For {@link EvictionPolicy#LFU}, the nodes are stored in 
+ *     {@link FrequencyBucket} lists, one for each access frequency, 
+ *     each in access order
+ *   </li>
+ *   <li>
+ *     For {@link EvictionPolicy#TINY_LFU}, the nodes are stored in a 
+ *     window, a probation and a protected list, each in access order,
+ *     and the admission from the window into the probation list is 
+ *     decided based on a {@link FrequencySketch}
+ *   </li>
+ * </ul>
+ * The values may be held through soft or weak references, as specified 
+ * by a {@link ValueStrength}. Values that have been collected by the 
+ * garbage collector are removed lazily: Nodes with collected values are
+ * removed when they are accessed, and the nodes of all collected values
+ * are removed, via a <code>ReferenceQueue</code>, whenever a value is 
+ * stored.<br>
+ * <br>
+ * The entries may expire after a certain time since they were written 
+ * or last accessed. For each kind of expiry, the nodes are additionally
+ * stored in a list that is ordered by the write or access time. Expired 
+ * entries are removed lazily as well: An expired entry is removed when 
+ * it is accessed, and the expired entries at the head of these lists 
+ * are removed whenever a value is stored. So there is no thread that 
+ * periodically scans the entries.<br>
+ * <br>
+ * The values may be <code>null</code>. This class is not thread-safe.
+ *
+ * @param <K> The first key type
+ * @param <L> The second key type
+ * @param <V> The value type
+ */
+final class CacheStore<K, L, V>
+{
+    /**
+     * The initial length of the hash table
+     */
+    private static final int INITIAL_TABLE_LENGTH = 16;
+    
+    /**
+     * The maximum length of the hash table
+     */
+    private static final int MAXIMUM_TABLE_LENGTH = 1 << 30;
+    
+    /**
+     * A node in a {@link NodeList}, storing one cache entry
+     *
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     */
+    static final class Node<K, L, V>
+    {
+        /**
+         * The first key
+         */
+        final K first;
+        
+        /**
+         * The second key
+         */
+        final L second;
+        
+        /**
+         * The hash code of the keys
+         */
+        final int hash;
+        
+        /**
+         * The value, if it is held through a strong reference, or if
+         * it is <code>null</code>
+         */
+        V value;
+        
+        /**
+         * The reference to the value, if it is held through a soft or 
+         * weak reference
+         */
+        Reference<V> reference;
+        
+        /**
+         * The time when the value was written, in nanoseconds
+         */
+        long writeTime;
+        
+        /**
+         * The time when the value was last accessed, in nanoseconds
+         */
+        long accessTime;
+        
+        /**
+         * The previous node in the write order list
+         */
+        Node<K, L, V> prevInWriteOrder;
+        
+        /**
+         * The next node in the write order list
+         */
+        Node<K, L, V> nextInWriteOrder;
+        
+        /**
+         * The previous node in the access order list
+         */
+        Node<K, L, V> prevInAccessOrder;
+        
+        /**
+         * The next node in the access order list
+         */
+        Node<K, L, V> nextInAccessOrder;
+        
+        /**
+         * The next node in the same bucket of the hash table
+         */
+        Node<K, L, V> nextInTable;
+        
+        /**
+         * The previous node in the list
+         */
+        Node<K, L, V> prev;
+        
+        /**
+         * The next node in the list
+         */
+        Node<K, L, V> next;
+        
+        /**
+         * The list that currently contains this node
+         */
+        NodeList<K, L, V> list;
+        
+        /**
+         * Creates a new node
+         * 
+         * @param first The first key
+         * @param second The second key
+         * @param hash The hash code of the keys
+         * @param value The value
+         */
+        Node(K first, L second, int hash, V value)
+        {
+            this.first = first;
+            this.second = second;
+            this.hash = hash;
+            this.value = value;
+        }
+        
+        /**
+         * Returns the value of this node. This is <code>null</code> if 
+         * the value is <code>null</code>, or if it was held through a
+         * soft or weak reference that has been cleared.
+         * 
+         * @return The value
+         */
+        V getValue()
+        {
+            if (reference != null)
+            {
+                return reference.get();
+            }
+            return value;
+        }
+        
+        /**
+         * Returns whether the value of this node was held through a 
+         * soft or weak reference that has been cleared by the garbage
+         * collector
+         * 
+         * @return Whether the value was collected
+         */
+        boolean isCollected()
+        {
+            return reference != null && reference.get() == null;
+        }
+    }
+    
+    /**
+     * Interface for references to values that know the node that 
+     * they belong to
+     */
+    private static interface ValueReference
+    {
+        /**
+         * Returns the node that this reference belongs to
+         * 
+         * @return The node
+         */
+        Node<?, ?, ?> getNode();
+    }
+    
+    /**
+     * A soft reference to a value
+     *
+     * @param <V> The value type
+     */
+    private static final class SoftValueReference<V> 
+        extends SoftReference<V> implements ValueReference
+    {
+        /**
+         * The node
+         */
+        private final Node<?, ?, ?> node;
+        
+        /**
+         * Creates a new reference
+         * 
+         * @param value The value
+         * @param queue The reference queue
+         * @param node The node
+         */
+        SoftValueReference(V value, ReferenceQueue<? super V> queue, 
+            Node<?, ?, ?> node)
+        {
+            super(value, queue);
+            this.node = node;
+        }
+        
+        @Override
+        public Node<?, ?, ?> getNode()
+        {
+            return node;
+        }
+    }
+    
+    /**
+     * A weak reference to a value
+     *
+     * @param <V> The value type
+     */
+    private static final class WeakValueReference<V> 
+        extends WeakReference<V> implements ValueReference
+    {
+        /**
+         * The node
+         */
+        private final Node<?, ?, ?> node;
+        
+        /**
+         * Creates a new reference
+         * 
+         * @param value The value
+         * @param queue The reference queue
+         * @param node The node
+         */
+        WeakValueReference(V value, ReferenceQueue<? super V> queue, 
+            Node<?, ?, ?> node)
+        {
+            super(value, queue);
+            this.node = node;
+        }
+        
+        @Override
+        public Node<?, ?, ?> getNode()
+        {
+            return node;
+        }
+    }
+    
+    /**
+     * A circular, doubly linked list of {@link Node} objects, with a 
+     * sentinel node
+     *
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     */
+    static class NodeList<K, L, V>
+    {
+        /**
+         * The sentinel node
+         */
+        private final Node<K, L, V> sentinel;
+        
+        /**
+         * The number of nodes in this list
+         */
+        int size;
+        
+        /**
+         * Creates a new, empty list
+         */
+        NodeList()
+        {
+            this.sentinel = new Node<K, L, V>(null, null, 0, null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+        
+        /**
+         * Returns the first node of this list, or <code>null</code> if 
+         * this list is empty
+         * 
+         * @return The first node
+         */
+        Node<K, L, V> first()
+        {
+            return size == 0 ? null : sentinel.next;
+        }
+        
+        /**
+         * Add the given node at the end of this list
+         * 
+         * @param node The node
+         */
+        void addLast(Node<K, L, V> node)
+        {
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            node.list = this;
+            size++;
+        }
+        
+        /**
+         * Remove the given node from this list
+         * 
+         * @param node The node
+         */
+        void remove(Node<K, L, V> node)
+        {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.list = null;
+            size--;
+        }
+        
+        /**
+         * Move the given node to the end of this list
+         * 
+         * @param node The node
+         */
+        void moveToLast(Node<K, L, V> node)
+        {
+            if (sentinel.prev != node)
+            {
+                remove(node);
+                addLast(node);
+            }
+        }
+        
+        /**
+         * Remove all nodes from this list
+         */
+        void clear()
+        {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            size = 0;
+        }
+    }
+    
+    /**
+     * A {@link NodeList} for the {@link EvictionPolicy#LFU} policy, 
+     * containing all nodes that have been accessed with a certain 
+     * frequency. The buckets themselves are stored in a circular,
+     * doubly linked list, in ascending order of their frequency.
+     *
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     */
+    static final class FrequencyBucket<K, L, V> extends NodeList<K, L, V>
+    {
+        /**
+         * The frequency
+         */
+        final int frequency;
+        
+        /**
+         * The previous bucket
+         */
+        FrequencyBucket<K, L, V> prevBucket;
+        
+        /**
+         * The next bucket
+         */
+        FrequencyBucket<K, L, V> nextBucket;
+        
+        /**
+         * Creates a new bucket
+         * 
+         * @param frequency The frequency
+         */
+        FrequencyBucket(int frequency)
+        {
+            this.frequency = frequency;
+            this.prevBucket = this;
+            this.nextBucket = this;
+        }
+        
+        /**
+         * Insert the given bucket after this one
+         * 
+         * @param bucket The bucket
+         */
+        void insertAfter(FrequencyBucket<K, L, V> bucket)
+        {
+            bucket.prevBucket = this;
+            bucket.nextBucket = nextBucket;
+            nextBucket.prevBucket = bucket;
+            nextBucket = bucket;
+        }
+        
+        /**
+         * Remove this bucket from the list of buckets
+         */
+        void unlink()
+        {
+            prevBucket.nextBucket = nextBucket;
+            nextBucket.prevBucket = prevBucket;
+        }
+    }
+    
+    /**
+     * The hash table containing the nodes
+     */
+    private Node<K, L, V> table[];
+    
+    /**
+     * The number of nodes in the hash table
+     */
+    private int size;
+    
+    /**
+     * The number of entries that have been evicted
+     */
+    private long evictionCount;
+    
+    /**
+     * The maximum size
+     */
+    private final long maximumSize;
+    
+    /**
+     * The eviction policy, or <code>null</code> if this store is 
+     * unbounded
+     */
+    private final EvictionPolicy policy;
+    
+    /**
+     * The list that contains all nodes for the {@link EvictionPolicy#LRU}
+     * policy, or the window for the {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final NodeList<K, L, V> window;
+    
+    /**
+     * The probation list for the {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final NodeList<K, L, V> probation;
+    
+    /**
+     * The protected list for the {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final NodeList<K, L, V> protectedList;
+    
+    /**
+     * The maximum size of the window for the 
+     * {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final long windowMaximumSize;
+    
+    /**
+     * The maximum size of the probation and protected lists for the 
+     * {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final long mainMaximumSize;
+    
+    /**
+     * The maximum size of the protected list for the 
+     * {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final long protectedMaximumSize;
+    
+    /**
+     * The sentinel of the frequency buckets for the
+     * {@link EvictionPolicy#LFU} policy, with a frequency of 0
+     */
+    private final FrequencyBucket<K, L, V> buckets;
+    
+    /**
+     * The frequency sketch for the {@link EvictionPolicy#TINY_LFU} policy
+     */
+    private final FrequencySketch sketch;
+    
+    /**
+     * The strength of the references to the values
+     */
+    private final ValueStrength valueStrength;
+    
+    /**
+     * The queue that receives the cleared references to the values, or
+     * <code>null</code> if the values are held through strong references
+     */
+    private final ReferenceQueue<V> referenceQueue;
+    
+    /**
+     * The duration after which entries expire after they have been 
+     * written, in nanoseconds, or 0 if they do not expire
+     */
+    private final long expireAfterWriteNanos;
+    
+    /**
+     * The duration after which entries expire after they have last 
+     * been accessed, in nanoseconds, or 0 if they do not expire
+     */
+    private final long expireAfterAccessNanos;
+    
+    /**
+     * The sentinel of the write order list
+     */
+    private final Node<K, L, V> writeOrder;
+    
+    /**
+     * The sentinel of the access order list
+     */
+    private final Node<K, L, V> accessOrder;
+    
+    /**
+     * Creates a new, unbounded store
+     */
+    CacheStore()
+    {
+        this(Long.MAX_VALUE, null);
+    }
+    
+    /**
+     * Creates a new store with the given maximum size and eviction 
+     * policy, holding strong references to its values, whose entries
+     * do not expire
+     * 
+     * @param maximumSize The maximum size
+     * @param policy The eviction policy. If this is <code>null</code>,
+     * then the store will be unbounded.
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    CacheStore(long maximumSize, EvictionPolicy policy)
+    {
+        this(maximumSize, policy, ValueStrength.STRONG, 0, 0);
+    }
+    
+    /**
+     * Creates a new store.
+     * 
+     * @param maximumSize The maximum size
+     * @param policy The eviction policy. If this is <code>null</code>,
+     * then the store will be unbounded.
+     * @param valueStrength The strength of the references to the values
+     * @param expireAfterWriteNanos The duration after which entries 
+     * expire after they have been written, in nanoseconds. If this is
+     * not positive, then entries do not expire after being written.
+     * @param expireAfterAccessNanos The duration after which entries 
+     * expire after they have last been accessed, in nanoseconds. If this 
+     * is not positive, then entries do not expire after being accessed.
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    CacheStore(long maximumSize, EvictionPolicy policy, 
+        ValueStrength valueStrength, 
+        long expireAfterWriteNanos, long expireAfterAccessNanos)
+    {
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The maximum size must be positive, but is " + maximumSize);
+        }
+        this.table = createTable(INITIAL_TABLE_LENGTH);
+        this.policy = policy;
+        this.maximumSize = policy == null ? Long.MAX_VALUE : maximumSize;
+        this.window = new NodeList<K, L, V>();
+        this.probation = new NodeList<K, L, V>();
+        this.protectedList = new NodeList<K, L, V>();
+        this.buckets = new FrequencyBucket<K, L, V>(0);
+        if (policy == EvictionPolicy.TINY_LFU)
+        {
+            this.windowMaximumSize = Math.max(1, maximumSize / 100);
+            this.mainMaximumSize = maximumSize - windowMaximumSize;
+            this.protectedMaximumSize = mainMaximumSize * 4 / 5;
+            this.sketch = new FrequencySketch();
+        }
+        else
+        {
+            this.windowMaximumSize = maximumSize;
+            this.mainMaximumSize = 0;
+            this.protectedMaximumSize = 0;
+            this.sketch = null;
+        }
+        this.valueStrength = valueStrength;
+        this.referenceQueue = valueStrength == ValueStrength.STRONG ? 
+            null : new ReferenceQueue<V>();
+        this.expireAfterWriteNanos = Math.max(0, expireAfterWriteNanos);
+        this.expireAfterAccessNanos = Math.max(0, expireAfterAccessNanos);
+        this.writeOrder = new Node<K, L, V>(null, null, 0, null);
+        writeOrder.prevInWriteOrder = writeOrder;
+        writeOrder.nextInWriteOrder = writeOrder;
+        this.accessOrder = new Node<K, L, V>(null, null, 0, null);
+        accessOrder.prevInAccessOrder = accessOrder;
+        accessOrder.nextInAccessOrder = accessOrder;
+    }
+    
+    /**
+     * Returns the number of entries in this store
+     * 
+     * @return The size
+     */
+    int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Returns the number of entries that have been removed from this 
+     * store since it was created, because they have been evicted, 
+     * their values have been collected, or they have expired
+     * 
+     * @return The eviction count
+     */
+    long evictionCount()
+    {
+        return evictionCount;
+    }
+    
+    /**
+     * Remove all entries from this store
+     */
+    void clear()
+    {
+        Arrays.fill(table, null);
+        size = 0;
+        window.clear();
+        probation.clear();
+        protectedList.clear();
+        buckets.prevBucket = buckets;
+        buckets.nextBucket = buckets;
+        writeOrder.prevInWriteOrder = writeOrder;
+        writeOrder.nextInWriteOrder = writeOrder;
+        accessOrder.prevInAccessOrder = accessOrder;
+        accessOrder.nextInAccessOrder = accessOrder;
+        if (sketch != null)
+        {
+            sketch.clear();
+        }
+        if (referenceQueue != null)
+        {
+            while (referenceQueue.poll() != null)
+            {
+                // Discard the references of the removed nodes
+            }
+        }
+    }
+    
+    /**
+     * Computes the hash code for the given keys
+     * 
+     * @param first The first key
+     * @param second The second key
+     * @return The hash code
+     */
+    static int hash(Object first, Object second)
+    {
+        int h = Objects.hashCode(first) * 31 + Objects.hashCode(second);
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Returns the node for the given keys, or <code>null</code> if there
+     * is no entry for the given keys. If there is an entry, then this
+     * is recorded as an access to the entry.<br>
+     * <br>
+     * If the entry has expired, or its value was collected, then it is 
+     * removed, and <code>null</code> is returned. Note that the value 
+     * may still be collected after this method returned. Callers should
+     * therefore obtain the value with {@link Node#getValue()}, and check
+     * {@link Node#isCollected()} if it is <code>null</code>.
+     * 
+     * @param first The first key
+     * @param second The second key
+     * @return The node
+     */
+    Node<K, L, V> get(K first, L second)
+    {
+        int hash = hash(first, second);
+        Node<K, L, V> node = find(first, second, hash);
+        if (sketch != null)
+        {
+            sketch.increment(hash);
+        }
+        if (node == null)
+        {
+            return null;
+        }
+        if (isExpiryEnabled())
+        {
+            long now = System.nanoTime();
+            if (isExpired(node, now))
+            {
+                removeNode(node);
+                evictionCount++;
+                return null;
+            }
+            if (expireAfterAccessNanos > 0)
+            {
+                node.accessTime = now;
+                moveToLastInAccessOrder(node);
+            }
+        }
+        if (node.isCollected())
+        {
+            removeNode(node);
+            evictionCount++;
+            return null;
+        }
+        onAccess(node);
+        return node;
+    }
+    
+    /**
+     * Store the given value for the given keys. If there already is an 
+     * entry for the given keys, then its value is replaced, and this
+     * is recorded as an access to the entry. Otherwise, a new entry
+     * is created, and entries may be evicted according to the 
+     * eviction policy.
+     * 
+     * @param first The first key
+     * @param second The second key
+     * @param value The value
+     */
+    void put(K first, L second, V value)
+    {
+        long now = isExpiryEnabled() ? System.nanoTime() : 0;
+        cleanUp(now);
+        int hash = hash(first, second);
+        Node<K, L, V> node = find(first, second, hash);
+        if (node != null)
+        {
+            setValue(node, value);
+            updateTimes(node, now);
+            onAccess(node);
+            return;
+        }
+        node = new Node<K, L, V>(first, second, hash, null);
+        setValue(node, value);
+        updateTimes(node, now);
+        if (policy == null)
+        {
+            insert(node);
+            return;
+        }
+        if (policy == EvictionPolicy.TINY_LFU)
+        {
+            insert(node);
+            insertTinyLfu(node);
+            return;
+        }
+        while (size >= maximumSize)
+        {
+            evict();
+        }
+        insert(node);
+        if (policy == EvictionPolicy.LRU)
+        {
+            window.addLast(node);
+        }
+        else
+        {
+            addToBucket(node, buckets, 1);
+        }
+    }
+    
+    /**
+     * Remove the entry for the given keys, if its value is the given one
+     * 
+     * @param first The first key
+     * @param second The second key
+     * @param value The value
+     * @return Whether the entry was removed
+     */
+    boolean remove(K first, L second, V value)
+    {
+        Node<K, L, V> node = find(first, second, hash(first, second));
+        if (node == null || node.getValue() != value)
+        {
+            return false;
+        }
+        removeNode(node);
+        return true;
+    }
+    
+    /**
+     * Set the value of the given node, using a reference with the 
+     * strength that was specified for this store
+     * 
+     * @param node The node
+     * @param value The value
+     */
+    private void setValue(Node<K, L, V> node, V value)
+    {
+        if (value == null || valueStrength == ValueStrength.STRONG)
+        {
+            node.value = value;
+            node.reference = null;
+        }
+        else if (valueStrength == ValueStrength.SOFT)
+        {
+            node.value = null;
+            node.reference = 
+                new SoftValueReference<V>(value, referenceQueue, node);
+        }
+        else
+        {
+            node.value = null;
+            node.reference = 
+                new WeakValueReference<V>(value, referenceQueue, node);
+        }
+    }
+    
+    /**
+     * Returns whether any kind of expiry is enabled
+     * 
+     * @return Whether expiry is enabled
+     */
+    private boolean isExpiryEnabled()
+    {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+    
+    /**
+     * Returns whether the given node has expired at the given time
+     * 
+     * @param node The node
+     * @param now The current time, in nanoseconds
+     * @return Whether the node has expired
+     */
+    private boolean isExpired(Node<K, L, V> node, long now)
+    {
+        if (expireAfterWriteNanos > 0 && 
+            now - node.writeTime >= expireAfterWriteNanos)
+        {
+            return true;
+        }
+        if (expireAfterAccessNanos > 0 && 
+            now - node.accessTime >= expireAfterAccessNanos)
+        {
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Set the write and access time of the given node to the given
+     * time, and move it to the end of the write and access order lists
+     * 
+     * @param node The node
+     * @param now The current time, in nanoseconds
+     */
+    private void updateTimes(Node<K, L, V> node, long now)
+    {
+        if (expireAfterWriteNanos > 0)
+        {
+            node.writeTime = now;
+            if (node.nextInWriteOrder != null)
+            {
+                unlinkFromWriteOrder(node);
+            }
+            Node<K, L, V> last = writeOrder.prevInWriteOrder;
+            node.prevInWriteOrder = last;
+            node.nextInWriteOrder = writeOrder;
+            last.nextInWriteOrder = node;
+            writeOrder.prevInWriteOrder = node;
+        }
+        if (expireAfterAccessNanos > 0)
+        {
+            node.accessTime = now;
+            moveToLastInAccessOrder(node);
+        }
+    }
+    
+    /**
+     * Move the given node to the end of the access order list
+     * 
+     * @param node The node
+     */
+    private void moveToLastInAccessOrder(Node<K, L, V> node)
+    {
+        if (node.nextInAccessOrder != null)
+        {
+            unlinkFromAccessOrder(node);
+        }
+        Node<K, L, V> last = accessOrder.prevInAccessOrder;
+        node.prevInAccessOrder = last;
+        node.nextInAccessOrder = accessOrder;
+        last.nextInAccessOrder = node;
+        accessOrder.prevInAccessOrder = node;
+    }
+    
+    /**
+     * Remove the given node from the write order list
+     * 
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     * @param node The node
+     */
+    private static <K, L, V> void unlinkFromWriteOrder(Node<K, L, V> node)
+    {
+        node.prevInWriteOrder.nextInWriteOrder = node.nextInWriteOrder;
+        node.nextInWriteOrder.prevInWriteOrder = node.prevInWriteOrder;
+        node.prevInWriteOrder = null;
+        node.nextInWriteOrder = null;
+    }
+    
+    /**
+     * Remove the given node from the access order list
+     * 
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     * @param node The node
+     */
+    private static <K, L, V> void unlinkFromAccessOrder(Node<K, L, V> node)
+    {
+        node.prevInAccessOrder.nextInAccessOrder = node.nextInAccessOrder;
+        node.nextInAccessOrder.prevInAccessOrder = node.prevInAccessOrder;
+        node.prevInAccessOrder = null;
+        node.nextInAccessOrder = null;
+    }
+    
+    /**
+     * Remove the nodes whose values have been collected, and the nodes
+     * at the head of the write and access order lists that have expired
+     * at the given time
+     * 
+     * @param now The current time, in nanoseconds
+     */
+    private void cleanUp(long now)
+    {
+        if (referenceQueue != null)
+        {
+            Reference<? extends V> reference = referenceQueue.poll();
+            while (reference != null)
+            {
+                @SuppressWarnings("unchecked")
+                Node<K, L, V> node = (Node<K, L, V>) 
+                    ((ValueReference) reference).getNode();
+                // The node may already have been removed, or received 
+                // a new value
+                if (node.reference == reference && 
+                    find(node.first, node.second, node.hash) == node)
+                {
+                    removeNode(node);
+                    evictionCount++;
+                }
+                reference = referenceQueue.poll();
+            }
+        }
+        if (expireAfterWriteNanos > 0)
+        {
+            Node<K, L, V> node = writeOrder.nextInWriteOrder;
+            while (node != writeOrder && 
+                now - node.writeTime >= expireAfterWriteNanos)
+            {
+                removeNode(node);
+                evictionCount++;
+                node = writeOrder.nextInWriteOrder;
+            }
+        }
+        if (expireAfterAccessNanos > 0)
+        {
+            Node<K, L, V> node = accessOrder.nextInAccessOrder;
+            while (node != accessOrder && 
+                now - node.accessTime >= expireAfterAccessNanos)
+            {
+                removeNode(node);
+                evictionCount++;
+                node = accessOrder.nextInAccessOrder;
+            }
+        }
+    }
+    
+    /**
+     * Remove the given node from the hash table and from all lists
+     * 
+     * @param node The node
+     */
+    private void removeNode(Node<K, L, V> node)
+    {
+        if (node.list instanceof FrequencyBucket<?, ?, ?>)
+        {
+            removeFromBucket(node, (FrequencyBucket<K, L, V>) node.list);
+        }
+        else if (node.list != null)
+        {
+            node.list.remove(node);
+        }
+        unlink(node);
+    }
+    
+    /**
+     * Returns the node for the given keys, or <code>null</code> if the
+     * hash table does not contain such a node
+     * 
+     * @param first The first key
+     * @param second The second key
+     * @param hash The hash code of the keys
+     * @return The node
+     */
+    private Node<K, L, V> find(K first, L second, int hash)
+    {
+        Node<K, L, V> node = table[hash & (table.length - 1)];
+        while (node != null)
+        {
+            if (node.hash == hash && 
+                Objects.equals(node.first, first) &&
+                Objects.equals(node.second, second))
+            {
+                return node;
+            }
+            node = node.nextInTable;
+        }
+        return null;
+    }
+    
+    /**
+     * Insert the given node into the hash table
+     * 
+     * @param node The node
+     */
+    private void insert(Node<K, L, V> node)
+    {
+        if (size >= table.length - (table.length >>> 2) && 
+            table.length < MAXIMUM_TABLE_LENGTH)
+        {
+            resize();
+        }
+        int index = node.hash & (table.length - 1);
+        node.nextInTable = table[index];
+        table[index] = node;
+        size++;
+        if (sketch != null)
+        {
+            sketch.ensureCapacity(size);
+        }
+    }
+    
+    /**
+     * Remove the given node from the hash table, and from the write
+     * and access order lists
+     * 
+     * @param node The node
+     */
+    private void unlink(Node<K, L, V> node)
+    {
+        if (node.nextInWriteOrder != null)
+        {
+            unlinkFromWriteOrder(node);
+        }
+        if (node.nextInAccessOrder != null)
+        {
+            unlinkFromAccessOrder(node);
+        }
+        int index = node.hash & (table.length - 1);
+        Node<K, L, V> previous = null;
+        Node<K, L, V> current = table[index];
+        while (current != null)
+        {
+            if (current == node)
+            {
+                if (previous == null)
+                {
+                    table[index] = current.nextInTable;
+                }
+                else
+                {
+                    previous.nextInTable = current.nextInTable;
+                }
+                current.nextInTable = null;
+                size--;
+                return;
+            }
+            previous = current;
+            current = current.nextInTable;
+        }
+    }
+    
+    /**
+     * Double the length of the hash table
+     */
+    private void resize()
+    {
+        Node<K, L, V> oldTable[] = table;
+        Node<K, L, V> newTable[] = createTable(oldTable.length << 1);
+        int mask = newTable.length - 1;
+        for (Node<K, L, V> head : oldTable)
+        {
+            Node<K, L, V> node = head;
+            while (node != null)
+            {
+                Node<K, L, V> next = node.nextInTable;
+                int index = node.hash & mask;
+                node.nextInTable = newTable[index];
+                newTable[index] = node;
+                node = next;
+            }
+        }
+        table = newTable;
+    }
+    
+    /**
+     * Creates a new hash table with the given length
+     * 
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     * @param length The length
+     * @return The hash table
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, L, V> Node<K, L, V>[] createTable(int length)
+    {
+        return (Node<K, L, V>[]) new Node<?, ?, ?>[length];
+    }
+    
+    /**
+     * Record an access to the given node
+     * 
+     * @param node The node
+     */
+    private void onAccess(Node<K, L, V> node)
+    {
+        if (policy == null)
+        {
+            return;
+        }
+        if (policy == EvictionPolicy.LRU)
+        {
+            window.moveToLast(node);
+        }
+        else if (policy == EvictionPolicy.LFU)
+        {
+            incrementFrequency(node);
+        }
+        else
+        {
+            onAccessTinyLfu(node);
+        }
+    }
+    
+    /**
+     * Evict one entry for the {@link EvictionPolicy#LRU} or the
+     * {@link EvictionPolicy#LFU} policy
+     */
+    private void evict()
+    {
+        if (policy == EvictionPolicy.LRU)
+        {
+            Node<K, L, V> node = window.first();
+            window.remove(node);
+            unlink(node);
+            evictionCount++;
+        }
+        else
+        {
+            FrequencyBucket<K, L, V> bucket = buckets.nextBucket;
+            Node<K, L, V> node = bucket.first();
+            removeFromBucket(node, bucket);
+            unlink(node);
+            evictionCount++;
+        }
+    }
+    
+    /**
+     * Move the given node into the bucket for the next higher frequency,
+     * for the {@link EvictionPolicy#LFU} policy
+     * 
+     * @param node The node
+     */
+    private void incrementFrequency(Node<K, L, V> node)
+    {
+        FrequencyBucket<K, L, V> bucket = (FrequencyBucket<K, L, V>) node.list;
+        if (bucket.frequency == Integer.MAX_VALUE)
+        {
+            bucket.moveToLast(node);
+            return;
+        }
+        int frequency = bucket.frequency + 1;
+        bucket.remove(node);
+        addToBucket(node, bucket, frequency);
+        if (bucket.size == 0)
+        {
+            bucket.unlink();
+        }
+    }
+    
+    /**
+     * Add the given node to the bucket with the given frequency, which
+     * is either the bucket after the given one, or a new bucket that is
+     * inserted after the given one
+     * 
+     * @param node The node
+     * @param previous The bucket that precedes the target bucket
+     * @param frequency The frequency
+     */
+    private void addToBucket(Node<K, L, V> node, 
+        FrequencyBucket<K, L, V> previous, int frequency)
+    {
+        FrequencyBucket<K, L, V> bucket = previous.nextBucket;
+        if (bucket == buckets || bucket.frequency != frequency)
+        {
+            bucket = new FrequencyBucket<K, L, V>(frequency);
+            previous.insertAfter(bucket);
+        }
+        bucket.addLast(node);
+    }
+    
+    /**
+     * Remove the given node from the given bucket, and remove the bucket
+     * if it became empty
+     * 
+     * @param node The node
+     * @param bucket The bucket
+     */
+    private void removeFromBucket(
+        Node<K, L, V> node, FrequencyBucket<K, L, V> bucket)
+    {
+        bucket.remove(node);
+        if (bucket.size == 0)
+        {
+            bucket.unlink();
+        }
+    }
+    
+    /**
+     * Insert the given new node, for the {@link EvictionPolicy#TINY_LFU} 
+     * policy. The node is added to the window. If the window becomes
+     * too large, then its least recently used node becomes a candidate 
+     * for the probation list. When the probation and protected lists 
+     * become too large, then either the candidate or the least recently 
+     * used node of the probation list is evicted, depending on which of 
+     * them is estimated to be used less frequently.
+     * 
+     * @param node The node
+     */
+    private void insertTinyLfu(Node<K, L, V> node)
+    {
+        window.addLast(node);
+        if (window.size <= windowMaximumSize)
+        {
+            return;
+        }
+        Node<K, L, V> candidate = window.first();
+        window.remove(candidate);
+        probation.addLast(candidate);
+        while (probation.size + protectedList.size > mainMaximumSize)
+        {
+            Node<K, L, V> victim = probation.first();
+            if (victim == candidate)
+            {
+                probation.remove(candidate);
+                unlink(candidate);
+                evictionCount++;
+                return;
+            }
+            int candidateFrequency = sketch.frequency(candidate.hash);
+            int victimFrequency = sketch.frequency(victim.hash);
+            if (candidateFrequency > victimFrequency)
+            {
+                probation.remove(victim);
+                unlink(victim);
+                evictionCount++;
+            }
+            else
+            {
+                probation.remove(candidate);
+                unlink(candidate);
+                evictionCount++;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Record an access to the given node, for the 
+     * {@link EvictionPolicy#TINY_LFU} policy. Nodes in the probation
+     * list are promoted to the protected list. When the protected list
+     * becomes too large, its least recently used node is moved back 
+     * into the probation list.
+     * 
+     * @param node The node
+     */
+    private void onAccessTinyLfu(Node<K, L, V> node)
+    {
+        NodeList<K, L, V> list = node.list;
+        if (list == probation)
+        {
+            probation.remove(node);
+            protectedList.addLast(node);
+            if (protectedList.size > protectedMaximumSize)
+            {
+                Node<K, L, V> demoted = protectedList.first();
+                protectedList.remove(demoted);
+                probation.addLast(demoted);
+            }
+        }
+        else
+        {
+            list.moveToLast(node);
+        }
+    }
+}
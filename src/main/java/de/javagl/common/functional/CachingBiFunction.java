@@ -26,16 +26,31 @@
  */
 package de.javagl.common.functional;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
-import de.javagl.common.Tuple2;
-
 /**
  * Implementation of a BiFunction that internally caches the values
- * that are obtained from a delegate 
+ * that are obtained from a delegate.<br>
+ * <br>
+ * By default, the cache is unbounded. When a maximum size is given,
+ * then entries are evicted according to an {@link EvictionPolicy}
+ * when the cache would otherwise exceed this size.<br>
+ * <br>
+ * The values may be held through soft or weak references, so that they
+ * may be removed by the garbage collector when the memory is running 
+ * low, and they may expire after a certain time since they have been 
+ * computed, or since they have last been accessed. Entries whose values
+ * have been collected or that have expired are removed lazily, during
+ * the calls to {@link #apply(Object, Object)}, without a separate 
+ * thread.<br>
+ * <br>
+ * The values that are returned by the delegate are cached, even when
+ * they are <code>null</code>. Looking up a cached value does not 
+ * allocate any objects.<br>
+ * <br>
+ * This class is not thread-safe.
  *
  * @param <T> The first argument type
  * @param <U> The second argument type
@@ -51,7 +66,12 @@ public final class CachingBiFunction<T, U, R> implements BiFunction<T, U, R>
     /**
      * The cache
      */
-    private final Map<Tuple2<T, U>, R> map;
+    private final CacheStore<T, U, R> store;
+    
+    /**
+     * The counter for the statistics
+     */
+    private final CacheStatsCounter statsCounter;
 
     /**
      * Creates a new caching BiFunction with the given delegate
@@ -63,7 +83,92 @@ public final class CachingBiFunction<T, U, R> implements BiFunction<T, U, R>
     {
         Objects.requireNonNull(delegate);
         this.delegate = delegate;
-        this.map = new HashMap<Tuple2<T,U>, R>();
+        this.store = new CacheStore<T, U, R>();
+        this.statsCounter = new CacheStatsCounter();
+    }
+    
+    /**
+     * Creates a new caching BiFunction with the given delegate, that
+     * stores at most the given number of values, and evicts values 
+     * according to the given policy
+     * 
+     * @param delegate The delegate
+     * @param maximumSize The maximum number of values in the cache
+     * @param policy The {@link EvictionPolicy}
+     * @throws NullPointerException If the delegate or the policy is 
+     * <code>null</code>
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    public CachingBiFunction(BiFunction<T, U, R> delegate, 
+        long maximumSize, EvictionPolicy policy)
+    {
+        Objects.requireNonNull(delegate);
+        Objects.requireNonNull(policy, "The policy may not be null");
+        this.delegate = delegate;
+        this.store = new CacheStore<T, U, R>(maximumSize, policy);
+        this.statsCounter = new CacheStatsCounter();
+    }
+    
+    /**
+     * Creates a new caching BiFunction with the given delegate, that
+     * stores at most the given number of values, evicts values according 
+     * to the given policy, holds the values through references with the
+     * given strength, and lets the values expire after the given 
+     * durations.
+     * 
+     * @param delegate The delegate
+     * @param maximumSize The maximum number of values in the cache. 
+     * This may be <code>Long.MAX_VALUE</code> for an unbounded cache.
+     * @param policy The {@link EvictionPolicy}
+     * @param valueStrength The {@link ValueStrength}
+     * @param expireAfterWrite The duration after which a value expires 
+     * after it has been computed. If this is not positive, then values 
+     * do not expire after being computed.
+     * @param expireAfterAccess The duration after which a value expires 
+     * after it has last been accessed. If this is not positive, then 
+     * values do not expire after being accessed.
+     * @param timeUnit The unit of the durations
+     * @throws NullPointerException If the delegate, the policy, the
+     * value strength or the time unit is <code>null</code>
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    public CachingBiFunction(BiFunction<T, U, R> delegate, 
+        long maximumSize, EvictionPolicy policy, 
+        ValueStrength valueStrength, 
+        long expireAfterWrite, long expireAfterAccess, TimeUnit timeUnit)
+    {
+        Objects.requireNonNull(delegate);
+        Objects.requireNonNull(policy, "The policy may not be null");
+        Objects.requireNonNull(valueStrength, 
+            "The valueStrength may not be null");
+        Objects.requireNonNull(timeUnit, "The timeUnit may not be null");
+        this.delegate = delegate;
+        this.store = new CacheStore<T, U, R>(maximumSize, policy, 
+            valueStrength, timeUnit.toNanos(expireAfterWrite), 
+            timeUnit.toNanos(expireAfterAccess));
+        this.statsCounter = new CacheStatsCounter();
+    }
+    
+    /**
+     * Returns the number of values that are currently cached. This may 
+     * include values that have expired or been collected, but have not 
+     * been removed yet.
+     * 
+     * @return The number of cached values
+     */
+    public int size()
+    {
+        return store.size();
+    }
+    
+    /**
+     * Returns a snapshot of the statistics of this cache
+     * 
+     * @return The {@link CacheStats}
+     */
+    public CacheStats getStats()
+    {
+        return statsCounter.snapshot(store.evictionCount(), store.size());
     }
     
     /**
@@ -71,19 +176,34 @@ public final class CachingBiFunction<T, U, R> implements BiFunction<T, U, R>
      */
     public void clear()
     {
-        map.clear();
+        store.clear();
     }
     
     @Override
     public R apply(T t, U u)
     {
-        Tuple2<T, U> key = Tuple2.of(t, u);
-        R value = map.get(key);
-        if (value == null)
+        CacheStore.Node<T, U, R> node = store.get(t, u);
+        if (node != null)
+        {
+            R value = node.getValue();
+            if (value != null || !node.isCollected())
+            {
+                statsCounter.recordHit();
+                return value;
+            }
+        }
+        statsCounter.recordMiss();
+        long before = System.nanoTime();
+        R value;
+        try
         {
             value = delegate.apply(t, u);
-            map.put(key, value);
         }
+        finally
+        {
+            statsCounter.recordLoad(System.nanoTime() - before);
+        }
+        store.put(t, u, value);
         return value;
     }
     
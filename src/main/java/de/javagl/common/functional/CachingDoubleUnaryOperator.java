@@ -0,0 +1,282 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Implementation of a DoubleUnaryOperator that internally caches the 
+ * values that are obtained from a delegate.<br>
+ * <br>
+ * The values are stored in an open-addressed hash table of primitive 
+ * <code>double</code> values, so that neither looking up a cached value
+ * nor caching a new value involves boxing.<br>
+ * <br>
+ * Optionally, the arguments may be quantized: When a quantum 
+ * <code>q</code> is given, then all arguments are rounded to the 
+ * nearest multiple of <code>q</code>, and the value of the delegate
+ * for this multiple is returned. This allows trading accuracy for a 
+ * higher hit rate when the function is evaluated for many arguments 
+ * that are close to each other. Arguments that are not finite (or so
+ * large that the multiple of the quantum can not be represented) are 
+ * then passed to the delegate directly, without caching.<br>
+ * <br>
+ * Optionally, a maximum size may be given. When the cache reaches this
+ * size, then it is cleared completely. <br>
+ * <br>
+ * This class is not thread-safe.
+ */
+public final class CachingDoubleUnaryOperator implements DoubleUnaryOperator
+{
+    /**
+     * The initial capacity of the table
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The maximum capacity of the table
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    
+    /**
+     * The maximum absolute index of a multiple of the quantum that is
+     * cached. Larger arguments are passed to the delegate directly.
+     */
+    private static final double MAXIMUM_QUANTIZED_INDEX = 0x1p62;
+    
+    /**
+     * The delegate
+     */
+    private final DoubleUnaryOperator delegate;
+    
+    /**
+     * The quantum, or 0.0 if the arguments are not quantized
+     */
+    private final double quantum;
+    
+    /**
+     * The maximum size
+     */
+    private final int maximumSize;
+    
+    /**
+     * The keys. If the arguments are quantized, then these are the 
+     * indices of the multiples of the quantum. Otherwise, they are the
+     * bits of the arguments.
+     */
+    private long keys[];
+    
+    /**
+     * The values
+     */
+    private double values[];
+    
+    /**
+     * Which slots of the table are occupied
+     */
+    private boolean occupied[];
+    
+    /**
+     * The number of entries
+     */
+    private int size;
+    
+    /**
+     * Creates a new caching DoubleUnaryOperator with the given delegate,
+     * that does not quantize the arguments and is unbounded
+     * 
+     * @param delegate The delegate
+     * @throws NullPointerException If the delegate is <code>null</code>
+     */
+    public CachingDoubleUnaryOperator(DoubleUnaryOperator delegate)
+    {
+        this(delegate, 0.0, MAXIMUM_CAPACITY / 2);
+    }
+    
+    /**
+     * Creates a new caching DoubleUnaryOperator with the given delegate
+     * 
+     * @param delegate The delegate
+     * @param quantum The quantum. If this is 0.0, then the arguments will 
+     * not be quantized.
+     * @param maximumSize The maximum size
+     * @throws NullPointerException If the delegate is <code>null</code>
+     * @throws IllegalArgumentException If the quantum is negative or not
+     * finite, or the maximum size is not positive
+     */
+    public CachingDoubleUnaryOperator(DoubleUnaryOperator delegate, 
+        double quantum, int maximumSize)
+    {
+        Objects.requireNonNull(delegate, "The delegate may not be null");
+        if (!(quantum >= 0.0) || Double.isInfinite(quantum))
+        {
+            throw new IllegalArgumentException(
+                "The quantum must be a non-negative, finite value, " 
+                + "but is " + quantum);
+        }
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The maximum size must be positive, but is " + maximumSize);
+        }
+        this.delegate = delegate;
+        this.quantum = quantum;
+        this.maximumSize = Math.min(maximumSize, MAXIMUM_CAPACITY / 2);
+        this.keys = new long[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        this.occupied = new boolean[INITIAL_CAPACITY];
+    }
+    
+    /**
+     * Returns the number of values that are currently cached
+     * 
+     * @return The number of cached values
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Clear the internal cache
+     */
+    public void clear()
+    {
+        Arrays.fill(occupied, false);
+        size = 0;
+    }
+    
+    @Override
+    public double applyAsDouble(double operand)
+    {
+        long key;
+        double argument;
+        if (quantum > 0.0)
+        {
+            double index = Math.rint(operand / quantum);
+            if (!(Math.abs(index) < MAXIMUM_QUANTIZED_INDEX))
+            {
+                return delegate.applyAsDouble(operand);
+            }
+            key = (long) index;
+            argument = index * quantum;
+        }
+        else
+        {
+            key = Double.doubleToLongBits(operand);
+            argument = operand;
+        }
+        int slot = find(key);
+        if (occupied[slot])
+        {
+            return values[slot];
+        }
+        double value = delegate.applyAsDouble(argument);
+        if (size >= maximumSize)
+        {
+            clear();
+        }
+        else if (size >= (keys.length >>> 1))
+        {
+            resize();
+        }
+        
+        // The delegate may have modified this cache, so the slot is 
+        // searched again
+        slot = find(key);
+        if (!occupied[slot])
+        {
+            keys[slot] = key;
+            occupied[slot] = true;
+            size++;
+        }
+        values[slot] = value;
+        return value;
+    }
+    
+    /**
+     * Returns the slot that contains the given key, or the empty slot
+     * where the given key should be inserted
+     * 
+     * @param key The key
+     * @return The slot
+     */
+    private int find(long key)
+    {
+        int mask = keys.length - 1;
+        int slot = slotFor(key, mask);
+        while (occupied[slot] && keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    /**
+     * Double the capacity of the table
+     */
+    private void resize()
+    {
+        long oldKeys[] = keys;
+        double oldValues[] = values;
+        boolean oldOccupied[] = occupied;
+        int capacity = oldKeys.length << 1;
+        keys = new long[capacity];
+        values = new double[capacity];
+        occupied = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldOccupied[i])
+            {
+                int slot = slotFor(oldKeys[i], mask);
+                while (occupied[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                occupied[slot] = true;
+            }
+        }
+    }
+    
+    /**
+     * Returns the initial slot for the given key
+     * 
+     * @param key The key
+     * @param mask The mask for the table indices
+     * @return The slot
+     */
+    private static int slotFor(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Implementation of an IntFunction that internally caches the values
+ * that are obtained from a delegate.<br>
+ * <br>
+ * The values are stored in an open-addressed hash table with primitive
+ * <code>int</code> keys, so that looking up a cached value does not 
+ * involve boxing. Values that are <code>null</code> are cached as 
+ * well.<br>
+ * <br>
+ * Optionally, a maximum size may be given. When the cache reaches this
+ * size, then it is cleared completely. <br>
+ * <br>
+ * This class is not thread-safe.
+ *
+ * @param <R> The result type
+ */
+public final class CachingIntFunction<R> implements IntFunction<R>
+{
+    /**
+     * The initial capacity of the table
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The maximum capacity of the table
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    
+    /**
+     * The delegate
+     */
+    private final IntFunction<? extends R> delegate;
+    
+    /**
+     * The maximum size
+     */
+    private final int maximumSize;
+    
+    /**
+     * The keys
+     */
+    private int keys[];
+    
+    /**
+     * The values
+     */
+    private Object values[];
+    
+    /**
+     * Which slots of the table are occupied
+     */
+    private boolean occupied[];
+    
+    /**
+     * The number of entries
+     */
+    private int size;
+    
+    /**
+     * Creates a new, unbounded caching IntFunction with the given 
+     * delegate
+     * 
+     * @param delegate The delegate
+     * @throws NullPointerException If the delegate is <code>null</code>
+     */
+    public CachingIntFunction(IntFunction<? extends R> delegate)
+    {
+        this(delegate, MAXIMUM_CAPACITY / 2);
+    }
+    
+    /**
+     * Creates a new caching IntFunction with the given delegate
+     * 
+     * @param delegate The delegate
+     * @param maximumSize The maximum size
+     * @throws NullPointerException If the delegate is <code>null</code>
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    public CachingIntFunction(IntFunction<? extends R> delegate, 
+        int maximumSize)
+    {
+        Objects.requireNonNull(delegate, "The delegate may not be null");
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The maximum size must be positive, but is " + maximumSize);
+        }
+        this.delegate = delegate;
+        this.maximumSize = Math.min(maximumSize, MAXIMUM_CAPACITY / 2);
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+        this.occupied = new boolean[INITIAL_CAPACITY];
+    }
+    
+    /**
+     * Returns the number of values that are currently cached
+     * 
+     * @return The number of cached values
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Clear the internal cache
+     */
+    public void clear()
+    {
+        Arrays.fill(occupied, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+    
+    @Override
+    public R apply(int key)
+    {
+        int slot = find(key);
+        if (occupied[slot])
+        {
+            @SuppressWarnings("unchecked")
+            R value = (R) values[slot];
+            return value;
+        }
+        R value = delegate.apply(key);
+        if (size >= maximumSize)
+        {
+            clear();
+        }
+        else if (size >= (keys.length >>> 1))
+        {
+            resize();
+        }
+        
+        // The delegate may have modified this cache, so the slot is 
+        // searched again
+        slot = find(key);
+        if (!occupied[slot])
+        {
+            keys[slot] = key;
+            occupied[slot] = true;
+            size++;
+        }
+        values[slot] = value;
+        return value;
+    }
+    
+    /**
+     * Returns the slot that contains the given key, or the empty slot
+     * where the given key should be inserted
+     * 
+     * @param key The key
+     * @return The slot
+     */
+    private int find(int key)
+    {
+        int mask = keys.length - 1;
+        int slot = slotFor(key, mask);
+        while (occupied[slot] && keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    /**
+     * Double the capacity of the table
+     */
+    private void resize()
+    {
+        int oldKeys[] = keys;
+        Object oldValues[] = values;
+        boolean oldOccupied[] = occupied;
+        int capacity = oldKeys.length << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        occupied = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldOccupied[i])
+            {
+                int slot = slotFor(oldKeys[i], mask);
+                while (occupied[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                occupied[slot] = true;
+            }
+        }
+    }
+    
+    /**
+     * Returns the initial slot for the given key
+     * 
+     * @param key The key
+     * @param mask The mask for the table indices
+     * @return The slot
+     */
+    private static int slotFor(int key, int mask)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
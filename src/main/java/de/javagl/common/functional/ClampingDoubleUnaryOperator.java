@@ -0,0 +1,116 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Implementation of a {@link DoubleUnaryOperator} that clamps the results 
+ * from another operator to the interval [min,max]
+ */
+final class ClampingDoubleUnaryOperator 
+    implements DoubleUnaryOperator, DoubleArrayOperator
+{
+    /**
+     * The operator whose results are clamped
+     */
+    private final DoubleUnaryOperator function;
+    
+    /**
+     * The minimum value
+     */
+    private final double min;
+    
+    /**
+     * The maximum value
+     */
+    private final double max;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param function The operator whose results are clamped
+     * @param min The minimum value
+     * @param max The maximum value
+     */
+    ClampingDoubleUnaryOperator(
+        DoubleUnaryOperator function, double min, double max)
+    {
+        this.function = function;
+        this.min = min;
+        this.max = max;
+    }
+    
+    @Override
+    public double applyAsDouble(double value)
+    {
+        return Math.max(min, Math.min(max, function.applyAsDouble(value)));
+    }
+    
+    @Override
+    public void applyToArray(double source[], int sourceOffset, 
+        double target[], int targetOffset, int length)
+    {
+        final double lo = min;
+        final double hi = max;
+        if (function instanceof AffineDoubleUnaryOperator)
+        {
+            AffineDoubleUnaryOperator affine = 
+                (AffineDoubleUnaryOperator) function;
+            affine.applyToArrayClamped(
+                source, sourceOffset, target, targetOffset, length, lo, hi);
+        }
+        else if (function instanceof InterpolatingDoubleUnaryOperator)
+        {
+            InterpolatingDoubleUnaryOperator interpolating = 
+                (InterpolatingDoubleUnaryOperator) function;
+            interpolating.applyToArrayClamped(
+                source, sourceOffset, target, targetOffset, length, lo, hi);
+        }
+        else if (function instanceof DoubleArrayOperator)
+        {
+            DoubleArrayOperator arrayOperator = 
+                (DoubleArrayOperator) function;
+            arrayOperator.applyToArray(
+                source, sourceOffset, target, targetOffset, length);
+            for (int i = 0; i < length; i++)
+            {
+                int t = targetOffset + i;
+                target[t] = Math.max(lo, Math.min(hi, target[t]));
+            }
+        }
+        else
+        {
+            for (int i = 0; i < length; i++)
+            {
+                double value = 
+                    function.applyAsDouble(source[sourceOffset + i]);
+                target[targetOffset + i] = Math.max(lo, Math.min(hi, value));
+            }
+        }
+    }
+}
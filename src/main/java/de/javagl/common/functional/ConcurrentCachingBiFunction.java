@@ -0,0 +1,380 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * Implementation of a BiFunction that internally caches the values
+ * that are obtained from a delegate, and that may be used by multiple
+ * threads concurrently.<br>
+ * <br>
+ * The cache is divided into segments, each being guarded by its own
+ * lock, so that threads that access different segments do not block
+ * each other. The locks are only held for looking up or inserting an
+ * entry, but not while the delegate computes a value. When multiple 
+ * threads request the value for the same arguments at the same time, 
+ * then only one of them calls the delegate, and the others wait for
+ * the result of this computation.<br>
+ * <br>
+ * If the delegate throws an exception, then this exception is passed 
+ * to the calling thread and to all threads that are waiting for the 
+ * same value, and no value is cached. Values that are <code>null</code> 
+ * are cached like any other value.<br>
+ * <br>
+ * By default, the cache is unbounded. When a maximum size is given,
+ * then this size is distributed among the segments, and each segment 
+ * evicts entries according to the given {@link EvictionPolicy}. So
+ * the eviction decisions are only made locally in each segment.<br>
+ * <br>
+ * The delegate may not call this function with the same arguments
+ * that it is currently computing the value for. Such a recursive call
+ * causes an <code>IllegalStateException</code>.
+ *
+ * @param <T> The first argument type
+ * @param <U> The second argument type
+ * @param <R> The result type
+ */
+public final class ConcurrentCachingBiFunction<T, U, R> 
+    implements BiFunction<T, U, R>
+{
+    /**
+     * The default number of segments, as a power of two that is at
+     * least four times the number of processors
+     */
+    private static final int DEFAULT_SEGMENTS = Integer.highestOneBit(
+        Math.max(1, Runtime.getRuntime().availableProcessors() * 8 - 1));
+    
+    /**
+     * The delegate
+     */
+    private final BiFunction<T, U, R> delegate;
+    
+    /**
+     * The segments
+     */
+    private final CacheStore<T, U, LoadingFuture<R>> segments[];
+    
+    /**
+     * The mask for computing segment indices
+     */
+    private final int segmentMask;
+    
+    /**
+     * The counter for the statistics
+     */
+    private final CacheStatsCounter statsCounter;
+    
+    /**
+     * Creates a new, unbounded concurrent caching BiFunction with the 
+     * given delegate
+     * 
+     * @param delegate The delegate
+     * @throws NullPointerException If the delegate is <code>null</code>
+     */
+    public ConcurrentCachingBiFunction(BiFunction<T, U, R> delegate)
+    {
+        Objects.requireNonNull(delegate, "The delegate may not be null");
+        this.delegate = delegate;
+        this.segments = createSegments(DEFAULT_SEGMENTS);
+        for (int i = 0; i < segments.length; i++)
+        {
+            segments[i] = new CacheStore<T, U, LoadingFuture<R>>();
+        }
+        this.segmentMask = segments.length - 1;
+        this.statsCounter = new CacheStatsCounter();
+    }
+    
+    /**
+     * Creates a new concurrent caching BiFunction with the given 
+     * delegate, that stores at most the given number of values, and 
+     * evicts values according to the given policy
+     * 
+     * @param delegate The delegate
+     * @param maximumSize The maximum number of values in the cache
+     * @param policy The {@link EvictionPolicy}
+     * @throws NullPointerException If the delegate or the policy is 
+     * <code>null</code>
+     * @throws IllegalArgumentException If the maximum size is not positive
+     */
+    public ConcurrentCachingBiFunction(BiFunction<T, U, R> delegate,
+        long maximumSize, EvictionPolicy policy)
+    {
+        Objects.requireNonNull(delegate, "The delegate may not be null");
+        Objects.requireNonNull(policy, "The policy may not be null");
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "The maximum size must be positive, but is " + maximumSize);
+        }
+        this.delegate = delegate;
+        int numSegments = (int) Math.min(DEFAULT_SEGMENTS, 
+            Long.highestOneBit(maximumSize));
+        this.segments = createSegments(numSegments);
+        for (int i = 0; i < numSegments; i++)
+        {
+            long segmentSize = maximumSize / numSegments;
+            if (i < maximumSize % numSegments)
+            {
+                segmentSize++;
+            }
+            segments[i] = new CacheStore<T, U, LoadingFuture<R>>(
+                segmentSize, policy);
+        }
+        this.segmentMask = numSegments - 1;
+        this.statsCounter = new CacheStatsCounter();
+    }
+    
+    /**
+     * Creates the array for the segments
+     * 
+     * @param <K> The first key type
+     * @param <L> The second key type
+     * @param <V> The value type
+     * @param numSegments The number of segments
+     * @return The array
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, L, V> CacheStore<K, L, V>[] createSegments(
+        int numSegments)
+    {
+        return (CacheStore<K, L, V>[]) new CacheStore<?, ?, ?>[numSegments];
+    }
+    
+    /**
+     * Returns the number of values that are currently cached, or being
+     * computed
+     * 
+     * @return The number of cached values
+     */
+    public int size()
+    {
+        int size = 0;
+        for (CacheStore<?, ?, ?> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Returns a snapshot of the statistics of this cache. The snapshot 
+     * is not atomic: Lookups that happen while the snapshot is taken 
+     * may or may not be reflected in it.
+     * 
+     * @return The {@link CacheStats}
+     */
+    public CacheStats getStats()
+    {
+        long evictionCount = 0;
+        long size = 0;
+        for (CacheStore<?, ?, ?> segment : segments)
+        {
+            synchronized (segment)
+            {
+                evictionCount += segment.evictionCount();
+                size += segment.size();
+            }
+        }
+        return statsCounter.snapshot(evictionCount, size);
+    }
+    
+    /**
+     * Clear the internal cache. Computations that are currently in 
+     * progress will not be affected, but their results will not be
+     * cached.
+     */
+    public void clear()
+    {
+        for (CacheStore<?, ?, ?> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+    
+    @Override
+    public R apply(T t, U u)
+    {
+        CacheStore<T, U, LoadingFuture<R>> segment = 
+            segmentFor(CacheStore.hash(t, u));
+        LoadingFuture<R> future = null;
+        LoadingFuture<R> newFuture = null;
+        synchronized (segment)
+        {
+            CacheStore.Node<T, U, LoadingFuture<R>> node = 
+                segment.get(t, u);
+            if (node != null)
+            {
+                future = node.getValue();
+            }
+            else
+            {
+                newFuture = new LoadingFuture<R>(Thread.currentThread());
+                segment.put(t, u, newFuture);
+            }
+        }
+        if (newFuture == null)
+        {
+            if (future.isLoadedBy(Thread.currentThread()))
+            {
+                throw new IllegalStateException(
+                    "Recursive call for the arguments (" + t + ", " + u 
+                    + ") while computing the value for these arguments");
+            }
+            statsCounter.recordHit();
+            return await(future);
+        }
+        statsCounter.recordMiss();
+        long before = System.nanoTime();
+        R value;
+        try
+        {
+            value = delegate.apply(t, u);
+        }
+        catch (Throwable e)
+        {
+            // Checked exceptions may be thrown by delegates that use
+            // tricks to bypass the compiler checks. Make sure that the 
+            // entry is removed and waiting threads are released anyhow.
+            statsCounter.recordLoad(System.nanoTime() - before);
+            synchronized (segment)
+            {
+                segment.remove(t, u, newFuture);
+            }
+            newFuture.completeExceptionally(e);
+            throw e;
+        }
+        statsCounter.recordLoad(System.nanoTime() - before);
+        newFuture.complete(value);
+        return value;
+    }
+    
+    /**
+     * Returns the segment for the given hash code
+     * 
+     * @param hashCode The hash code
+     * @return The segment
+     */
+    private CacheStore<T, U, LoadingFuture<R>> segmentFor(
+        int hashCode)
+    {
+        // Use the upper bits of the hash, because the lower bits are 
+        // used by the hash table inside of the segment
+        int hash = hashCode * 0x9E3779B9;
+        return segments[(hash >>> 16) & segmentMask];
+    }
+    
+    /**
+     * Wait for the given future to be completed, and return its result.
+     * If the future was completed exceptionally, then the exception
+     * is thrown.
+     * 
+     * @param <R> The result type
+     * @param future The future
+     * @return The result
+     */
+    private static <R> R await(CompletableFuture<R> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * A future for a value that is computed by a certain thread. The
+     * reference to the thread is released when the future is completed.
+     * 
+     * @param <R> The result type
+     */
+    private static final class LoadingFuture<R> extends CompletableFuture<R>
+    {
+        /**
+         * The thread that computes the value, or <code>null</code> if
+         * the computation is done
+         */
+        private volatile Thread loadingThread;
+        
+        /**
+         * Creates a new instance
+         * 
+         * @param loadingThread The thread that computes the value
+         */
+        LoadingFuture(Thread loadingThread)
+        {
+            this.loadingThread = loadingThread;
+        }
+        
+        /**
+         * Returns whether the value of this future is currently being
+         * computed by the given thread
+         * 
+         * @param thread The thread
+         * @return Whether the value is computed by the given thread
+         */
+        boolean isLoadedBy(Thread thread)
+        {
+            return loadingThread == thread;
+        }
+        
+        @Override
+        public boolean complete(R value)
+        {
+            loadingThread = null;
+            return super.complete(value);
+        }
+        
+        @Override
+        public boolean completeExceptionally(Throwable ex)
+        {
+            loadingThread = null;
+            return super.completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+/**
+ * Package-private interface for {@link java.util.function.DoubleUnaryOperator}
+ * implementations that offer a specialized loop for applying the operator 
+ * to a range of an array. These loops do not contain any virtual calls,
+ * so that they may be vectorized by the JIT.
+ */
+interface DoubleArrayOperator
+{
+    /**
+     * Apply the operator to the specified elements of the source array,
+     * and write the results into the target array. The source and the
+     * target may be the same array, with the same offset.
+     * 
+     * @param source The source array
+     * @param sourceOffset The offset in the source array
+     * @param target The target array
+     * @param targetOffset The offset in the target array
+     * @param length The number of elements
+     */
+    void applyToArray(double source[], int sourceOffset, 
+        double target[], int targetOffset, int length);
+}
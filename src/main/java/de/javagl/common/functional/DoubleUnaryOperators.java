@@ -26,13 +26,33 @@
  */
 package de.javagl.common.functional;
 
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.DoubleUnaryOperator;
 
+import de.javagl.common.concurrent.ParallelRangeExecutor;
+
 /**
- * Utility methods to create {@link DoubleUnaryOperator} instances
+ * Utility methods to create {@link DoubleUnaryOperator} instances, and
+ * to apply them to arrays and buffers.<br>
+ * <br>
+ * The operators that are created with {@link #affine(double, double)}, 
+ * {@link #clamp(DoubleUnaryOperator, double, double)} and the 
+ * <code>interpolate</code> methods are recognized by the <code>apply</code>
+ * methods, which then use specialized loops that may be vectorized
+ * by the JIT.
  */
 public class DoubleUnaryOperators
 {
+    /**
+     * The size of the chunks in which buffers that are not backed by
+     * arrays are processed
+     */
+    private static final int BUFFER_CHUNK_SIZE = 1024;
+    
     /**
      * Returns a {@link DoubleUnaryOperator} that maps the interval [0,1]
      * to the interval [min,max]
@@ -45,7 +65,7 @@ public class DoubleUnaryOperators
         final double min, final double max)
     {
         final double delta = max - min;
-        return x -> min + x * delta;
+        return new AffineDoubleUnaryOperator(delta, min);
     }
 
     /**
@@ -67,17 +87,8 @@ public class DoubleUnaryOperators
         final double minSource, final double maxSource,
         final double minTarget, final double maxTarget)
     {
-        final double invDeltaSource = 1.0 / (maxSource - minSource);
-        final double deltaTarget = maxTarget - minTarget;
-        return new DoubleUnaryOperator()
-        {
-            @Override
-            public double applyAsDouble(double value)
-            {
-                double alpha = (value - minSource) * invDeltaSource;
-                return minTarget + alpha * deltaTarget;
-            }
-        };
+        return new InterpolatingDoubleUnaryOperator(
+            minSource, maxSource, minTarget, maxTarget);
     }
     
     /**
@@ -93,7 +104,7 @@ public class DoubleUnaryOperators
         final DoubleUnaryOperator function,
         final double min, final double max)
     {
-        return x -> Math.max(min, Math.min(max, function.applyAsDouble(x)));
+        return new ClampingDoubleUnaryOperator(function, min, max);
     }
 
     /**
@@ -107,9 +118,286 @@ public class DoubleUnaryOperators
     public static DoubleUnaryOperator affine(
         final double factor, final double addend)
     {
-        return x -> factor * x + addend;
+        return new AffineDoubleUnaryOperator(factor, addend);
+    }
+    
+    /**
+     * Returns a {@link TabulatedDoubleUnaryOperator} that approximates the
+     * given operator in the given domain, by linearly interpolating between
+     * the given number of equidistant samples. Arguments outside of the
+     * domain are passed to the given operator.
+     * 
+     * @param function The {@link DoubleUnaryOperator}
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param numSamples The number of samples
+     * @return The {@link TabulatedDoubleUnaryOperator}
+     * @throws IllegalArgumentException If the domain is not a finite,
+     * non-empty interval, or the number of samples is smaller than 2
+     */
+    public static TabulatedDoubleUnaryOperator tabulate(
+        DoubleUnaryOperator function, double min, double max, int numSamples)
+    {
+        Objects.requireNonNull(function, "The function may not be null");
+        return TabulatedDoubleUnaryOperator.createUniform(
+            function, min, max, numSamples);
+    }
+    
+    /**
+     * Returns a {@link TabulatedDoubleUnaryOperator} that approximates the
+     * given operator in the given domain, by linearly interpolating between
+     * equidistant samples. The number of samples is doubled until the
+     * observed error is not larger than the given maximum error, or 
+     * doubling it would exceed 2<sup>20</sup> samples. So if the maximum 
+     * error cannot be achieved (for example, because it is below the 
+     * floating-point precision of the values), then the table will 
+     * have about one million samples. The actual error can be obtained 
+     * with {@link TabulatedDoubleUnaryOperator#getMaximumError()}. 
+     * Arguments outside of the domain are passed to the given operator.
+     * 
+     * @param function The {@link DoubleUnaryOperator}
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param maximumError The maximum absolute error
+     * @return The {@link TabulatedDoubleUnaryOperator}
+     * @throws IllegalArgumentException If the domain is not a finite,
+     * non-empty interval, or the maximum error is not positive
+     */
+    public static TabulatedDoubleUnaryOperator tabulate(
+        DoubleUnaryOperator function, double min, double max, 
+        double maximumError)
+    {
+        Objects.requireNonNull(function, "The function may not be null");
+        return TabulatedDoubleUnaryOperator.createUniform(
+            function, min, max, maximumError);
+    }
+    
+    /**
+     * Returns a {@link TabulatedDoubleUnaryOperator} that approximates the
+     * given operator in the given domain, by linearly interpolating between
+     * samples. The domain is divided into segments of equal size. The
+     * number of samples in the segment with the largest observed error 
+     * is doubled, until the observed error in all segments is not larger 
+     * than the given maximum error, or doubling it would exceed a total 
+     * of 2<sup>20</sup> samples. So regions where the operator is nearly 
+     * linear require fewer samples than regions where it is strongly 
+     * curved. If the maximum error cannot be achieved, then the table 
+     * will have up to about one million samples. The actual error can 
+     * be obtained with 
+     * {@link TabulatedDoubleUnaryOperator#getMaximumError()}. Arguments 
+     * outside of the domain are passed to the given operator.
+     * 
+     * @param function The {@link DoubleUnaryOperator}
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param maximumError The maximum absolute error
+     * @return The {@link TabulatedDoubleUnaryOperator}
+     * @throws IllegalArgumentException If the domain is not a finite,
+     * non-empty interval, or the maximum error is not positive
+     */
+    public static TabulatedDoubleUnaryOperator tabulateAdaptive(
+        DoubleUnaryOperator function, double min, double max, 
+        double maximumError)
+    {
+        Objects.requireNonNull(function, "The function may not be null");
+        return TabulatedDoubleUnaryOperator.createAdaptive(
+            function, min, max, maximumError);
+    }
+    
+    /**
+     * Apply the given operator to all elements of the given source array,
+     * and write the results into the given target array. The source and
+     * the target may be the same array.
+     * 
+     * @param operator The {@link DoubleUnaryOperator}
+     * @param source The source array
+     * @param target The target array
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the target array is shorter 
+     * than the source array
+     */
+    public static void apply(DoubleUnaryOperator operator, 
+        double source[], double target[])
+    {
+        apply(operator, source, target, 0, source.length);
     }
     
+    /**
+     * Apply the given operator to the elements of the given source array
+     * in the range [min,max), and write the results into the same range
+     * of the given target array. The source and the target may be the 
+     * same array.
+     * 
+     * @param operator The {@link DoubleUnaryOperator}
+     * @param source The source array
+     * @param target The target array
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the range is not valid for
+     * the given arrays
+     */
+    public static void apply(DoubleUnaryOperator operator, 
+        double source[], double target[], int min, int max)
+    {
+        Objects.requireNonNull(operator, "The operator may not be null");
+        validate(source.length, target.length, min, max);
+        applyToArray(operator, source, min, target, min, max - min);
+    }
+    
+    /**
+     * Apply the given operator to the remaining elements of the given 
+     * source buffer, and write the results into the given target buffer,
+     * starting at its current position. The positions and limits of 
+     * the buffers are not modified.<br>
+     * <br>
+     * The source and the target may be the same buffer, or buffers that 
+     * are backed by the same array, even if their contents overlap. Other 
+     * buffers that share their contents (for example, different views of
+     * the same direct buffer) must not overlap.
+     * 
+     * @param operator The {@link DoubleUnaryOperator}
+     * @param source The source buffer
+     * @param target The target buffer
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the target buffer has fewer 
+     * remaining elements than the source buffer
+     * @throws java.nio.ReadOnlyBufferException If the target buffer is 
+     * read-only
+     */
+    public static void apply(DoubleUnaryOperator operator, 
+        DoubleBuffer source, DoubleBuffer target)
+    {
+        Objects.requireNonNull(operator, "The operator may not be null");
+        int length = source.remaining();
+        if (target.remaining() < length)
+        {
+            throw new IllegalArgumentException(
+                "The target has " + target.remaining() + " remaining " 
+                + "elements, but the source has " + length);
+        }
+        if (source.hasArray() && target.hasArray())
+        {
+            double sourceArray[] = source.array();
+            int sourceOffset = source.arrayOffset() + source.position();
+            double targetArray[] = target.array();
+            int targetOffset = target.arrayOffset() + target.position();
+            
+            // When the ranges overlap at different offsets, then the loop
+            // could read elements that have already been overwritten
+            if (sourceArray == targetArray && sourceOffset != targetOffset
+                && Math.abs(sourceOffset - targetOffset) < length)
+            {
+                sourceArray = Arrays.copyOfRange(
+                    sourceArray, sourceOffset, sourceOffset + length);
+                sourceOffset = 0;
+            }
+            applyToArray(operator, sourceArray, sourceOffset, 
+                targetArray, targetOffset, length);
+            return;
+        }
+        DoubleBuffer s = source.duplicate();
+        DoubleBuffer t = target.duplicate();
+        double chunk[] = new double[Math.min(length, BUFFER_CHUNK_SIZE)];
+        while (s.hasRemaining())
+        {
+            int n = Math.min(s.remaining(), chunk.length);
+            s.get(chunk, 0, n);
+            applyToArray(operator, chunk, 0, chunk, 0, n);
+            t.put(chunk, 0, n);
+        }
+    }
+    
+    /**
+     * Apply the given operator to all elements of the given source array,
+     * in parallel, and write the results into the given target array. 
+     * The source and the target may be the same array.<br>
+     * <br>
+     * The array is divided into sub-ranges that are processed with the 
+     * given executor service, as described in {@link 
+     * ParallelRangeExecutor#executeChecked(int, ExecutorService, int, 
+     * int, ParallelRangeExecutor.RangeExecutor)}. Exceptions that are 
+     * thrown by the operator are passed to the caller.
+     * 
+     * @param parallelism The parallelism
+     * @param executorService The executor service
+     * @param operator The {@link DoubleUnaryOperator}
+     * @param source The source array
+     * @param target The target array
+     * @throws NullPointerException If any argument is <code>null</code>
+     * @throws IllegalArgumentException If the parallelism is not positive,
+     * or the target array is shorter than the source array
+     * @throws CancellationException If the calling thread was interrupted
+     * while waiting for the sub-ranges to be processed. The contents of
+     * the target array are unspecified in this case.
+     */
+    public static void applyParallel(
+        int parallelism, ExecutorService executorService, 
+        DoubleUnaryOperator operator, double source[], double target[])
+    {
+        Objects.requireNonNull(operator, "The operator may not be null");
+        validate(source.length, target.length, 0, source.length);
+        ParallelRangeExecutor.executeChecked(parallelism, executorService, 
+            0, source.length, (taskIndex, min, max) -> 
+                applyToArray(operator, source, min, target, min, max - min));
+    }
+    
+    /**
+     * Apply the given operator to the specified elements of the source 
+     * array, and write the results into the target array, using the
+     * specialized loop if the operator is a {@link DoubleArrayOperator}
+     * 
+     * @param operator The operator
+     * @param source The source array
+     * @param sourceOffset The offset in the source array
+     * @param target The target array
+     * @param targetOffset The offset in the target array
+     * @param length The number of elements
+     */
+    private static void applyToArray(DoubleUnaryOperator operator, 
+        double source[], int sourceOffset, 
+        double target[], int targetOffset, int length)
+    {
+        if (operator instanceof DoubleArrayOperator)
+        {
+            DoubleArrayOperator arrayOperator = 
+                (DoubleArrayOperator) operator;
+            arrayOperator.applyToArray(
+                source, sourceOffset, target, targetOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            target[targetOffset + i] = 
+                operator.applyAsDouble(source[sourceOffset + i]);
+        }
+    }
+    
+    /**
+     * Validate the given range for arrays with the given lengths
+     * 
+     * @param sourceLength The source length
+     * @param targetLength The target length
+     * @param min The minimum index, inclusive
+     * @param max The maximum index, exclusive
+     * @throws IllegalArgumentException If the range is not valid
+     */
+    private static void validate(
+        int sourceLength, int targetLength, int min, int max)
+    {
+        if (min < 0 || min > max || max > sourceLength)
+        {
+            throw new IllegalArgumentException(
+                "The range [" + min + "," + max + ") is not valid for " 
+                + "a source array with length " + sourceLength);
+        }
+        if (max > targetLength)
+        {
+            throw new IllegalArgumentException(
+                "The range [" + min + "," + max + ") is not valid for " 
+                + "a target array with length " + targetLength);
+        }
+    }
     
     /**
      * Private constructor to prevent instantiation
@@ -0,0 +1,59 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+/**
+ * The policies that may be used for selecting the entries that are 
+ * evicted from a cache when it reaches its maximum size.
+ */
+public enum EvictionPolicy
+{
+    /**
+     * Evict the entry that was least recently used
+     */
+    LRU,
+    
+    /**
+     * Evict the entry that was least frequently used. Among entries with
+     * the same frequency, the least recently used one is evicted.
+     */
+    LFU,
+    
+    /**
+     * A combination of recency and frequency: New entries are first 
+     * stored in a small LRU window. When an entry has to leave this
+     * window, it is only admitted to the main part of the cache when 
+     * it is (approximately) used more frequently than the entry that
+     * would have to be evicted for it. The main part is divided into 
+     * a probation and a protected segment, so that entries that are 
+     * only used once can not displace entries that are used repeatedly.
+     * This usually yields a higher hit rate than {@link #LRU} or 
+     * {@link #LFU}, particularly for workloads that contain scans over
+     * many entries that are only used once.
+     */
+    TINY_LFU
+}
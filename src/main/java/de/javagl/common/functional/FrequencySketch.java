@@ -0,0 +1,231 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.Arrays;
+
+/**
+ * A probabilistic estimation of the frequencies of elements, used for
+ * the admission decisions of the {@link EvictionPolicy#TINY_LFU} 
+ * policy.<br>
+ * <br>
+ * This is a count-min sketch with a depth of 4, where each counter 
+ * has 4 bits, packed into <code>long</code> values. When the number 
+ * of recorded occurrences reaches a certain sample size, all counters 
+ * are halved, so that the estimation adapts to changing frequencies.<br>
+ * <br>
+ * The sketch initially is small. It is enlarged with 
+ * {@link #ensureCapacity(long)} when the number of entries in the cache 
+ * grows, so that a cache with a large maximum size does not allocate 
+ * a large sketch in advance.
+ */
+final class FrequencySketch
+{
+    /**
+     * The seeds for the hash functions
+     */
+    private static final long SEEDS[] = 
+    { 
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L 
+    };
+    
+    /**
+     * The mask for halving all counters of a <code>long</code>
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+    
+    /**
+     * The minimum length of the table
+     */
+    private static final int MINIMUM_TABLE_LENGTH = 8;
+    
+    /**
+     * The maximum length of the table
+     */
+    private static final int MAXIMUM_TABLE_LENGTH = 1 << 30;
+    
+    /**
+     * The table, containing 16 counters in each element
+     */
+    private long table[];
+    
+    /**
+     * The mask for computing table indices
+     */
+    private int tableMask;
+    
+    /**
+     * The number of recorded occurrences after which the counters 
+     * are halved
+     */
+    private int sampleSize;
+    
+    /**
+     * The number of recorded occurrences since the last reset
+     */
+    private int size;
+    
+    /**
+     * Creates a new sketch with the minimum size
+     */
+    FrequencySketch()
+    {
+        initialize(MINIMUM_TABLE_LENGTH);
+    }
+    
+    /**
+     * Make sure that this sketch is large enough for a cache that 
+     * contains the given number of entries. If the sketch has to be
+     * enlarged, then all recorded occurrences are discarded. Since the
+     * size of the sketch is doubled when it is enlarged, this happens
+     * only rarely.
+     * 
+     * @param capacity The number of entries
+     */
+    void ensureCapacity(long capacity)
+    {
+        if (capacity <= table.length || table.length >= MAXIMUM_TABLE_LENGTH)
+        {
+            return;
+        }
+        int tableLength = (int) Math.min(
+            Long.highestOneBit(capacity - 1) << 1, MAXIMUM_TABLE_LENGTH);
+        initialize(tableLength);
+    }
+    
+    /**
+     * Initialize this sketch with a table of the given length
+     * 
+     * @param tableLength The table length, which must be a power of 2
+     */
+    private void initialize(int tableLength)
+    {
+        this.table = new long[tableLength];
+        this.tableMask = tableLength - 1;
+        this.sampleSize = (int) Math.min(10L * tableLength, Integer.MAX_VALUE);
+        this.size = 0;
+    }
+    
+    /**
+     * Returns the estimated frequency of the element with the given 
+     * hash code. This will be a value in [0,15].
+     * 
+     * @param hashCode The hash code
+     * @return The estimated frequency
+     */
+    int frequency(int hashCode)
+    {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            int count = (int) ((table[index] >>> offset) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+    
+    /**
+     * Record an occurrence of the element with the given hash code
+     * 
+     * @param hashCode The hash code
+     */
+    void increment(int hashCode)
+    {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            long mask = 0xFL << offset;
+            if ((table[index] & mask) != mask)
+            {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize)
+        {
+            reset();
+        }
+    }
+    
+    /**
+     * Reset all counters to zero
+     */
+    void clear()
+    {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+    
+    /**
+     * Halve all counters
+     */
+    private void reset()
+    {
+        for (int i = 0; i < table.length; i++)
+        {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+    
+    /**
+     * Returns the table index for the given hash and counter depth
+     * 
+     * @param hash The hash
+     * @param depth The depth, in [0,4)
+     * @return The table index
+     */
+    private int indexOf(int hash, int depth)
+    {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+    
+    /**
+     * Apply a supplemental hash function to the given hash code
+     * 
+     * @param hashCode The hash code
+     * @return The spread hash
+     */
+    private static int spread(int hashCode)
+    {
+        int h = hashCode;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.functional;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A {@link DoubleUnaryOperator} that approximates another operator
+ * inside of a certain domain, by interpolating linearly between values 
+ * that have been sampled from the other operator in advance.<br>
+ * <br>
+ * The domain is divided into segments of equal size. Each segment is
+ * divided into a number of intervals of equal size, and the number of 
+ * intervals may be different for each segment. So the value for a 
+ * certain argument can be computed in constant time, by computing the
+ * segment and the interval that contain the argument, and interpolating
+ * between the values at the interval borders. Arguments that are outside
+ * of the domain are passed to the original operator.<br>
+ * <br>
+ * Instances of this class are created with the <code>tabulate</code>
+ * methods in {@link DoubleUnaryOperators}.
+ */
+public final class TabulatedDoubleUnaryOperator implements DoubleUnaryOperator
+{
+    /**
+     * The maximum total number of samples that is used when trying to 
+     * achieve a certain maximum error
+     */
+    static final int MAXIMUM_SAMPLES = 1 << 20;
+    
+    /**
+     * The number of intervals that each segment initially has when
+     * trying to achieve a certain maximum error
+     */
+    private static final int INITIAL_INTERVALS_PER_SEGMENT = 4;
+    
+    /**
+     * The number of segments for an adaptive tabulation
+     */
+    private static final int ADAPTIVE_SEGMENTS = 64;
+    
+    /**
+     * The original operator
+     */
+    private final DoubleUnaryOperator delegate;
+    
+    /**
+     * The minimum of the domain
+     */
+    private final double min;
+    
+    /**
+     * The maximum of the domain
+     */
+    private final double max;
+    
+    /**
+     * The number of segments
+     */
+    private final int numSegments;
+    
+    /**
+     * The number of segments divided by the size of the domain
+     */
+    private final double segmentScale;
+    
+    /**
+     * The index of the first value of each segment in the values array
+     */
+    private final int offsets[];
+    
+    /**
+     * The number of intervals in each segment
+     */
+    private final int counts[];
+    
+    /**
+     * The sampled values
+     */
+    private final double values[];
+    
+    /**
+     * The maximum error that was observed while sampling
+     */
+    private final double maximumError;
+    
+    /**
+     * Creates a new instance
+     * 
+     * @param delegate The original operator
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param segments The sampled values of each segment. The array for
+     * segment <code>i</code> has a length of <code>n+1</code>, where 
+     * <code>n</code> is the number of intervals in the segment.
+     * @param maximumError The maximum error that was observed
+     */
+    private TabulatedDoubleUnaryOperator(DoubleUnaryOperator delegate, 
+        double min, double max, double segments[][], double maximumError)
+    {
+        this.delegate = delegate;
+        this.min = min;
+        this.max = max;
+        this.numSegments = segments.length;
+        this.segmentScale = numSegments / (max - min);
+        this.offsets = new int[numSegments];
+        this.counts = new int[numSegments];
+        int numValues = 0;
+        for (int s = 0; s < numSegments; s++)
+        {
+            offsets[s] = numValues;
+            counts[s] = segments[s].length - 1;
+            numValues += segments[s].length;
+        }
+        this.values = new double[numValues];
+        for (int s = 0; s < numSegments; s++)
+        {
+            System.arraycopy(segments[s], 0, values, offsets[s], 
+                segments[s].length);
+        }
+        this.maximumError = maximumError;
+    }
+    
+    /**
+     * Creates a tabulation of the given operator in the given domain,
+     * with the given number of equidistant samples
+     * 
+     * @param delegate The operator
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param numSamples The number of samples
+     * @return The tabulated operator
+     */
+    static TabulatedDoubleUnaryOperator createUniform(
+        DoubleUnaryOperator delegate, double min, double max, int numSamples)
+    {
+        validate(min, max);
+        if (numSamples < 2)
+        {
+            throw new IllegalArgumentException(
+                "The number of samples must be at least 2, but is " 
+                + numSamples);
+        }
+        double samples[] = sample(delegate, min, max, numSamples - 1);
+        double error = computeError(delegate, min, max, samples);
+        return new TabulatedDoubleUnaryOperator(
+            delegate, min, max, new double[][] { samples }, error);
+    }
+    
+    /**
+     * Creates a tabulation of the given operator in the given domain,
+     * with equidistant samples, trying to achieve the given maximum 
+     * error
+     * 
+     * @param delegate The operator
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param maximumError The maximum error
+     * @return The tabulated operator
+     */
+    static TabulatedDoubleUnaryOperator createUniform(
+        DoubleUnaryOperator delegate, double min, double max, 
+        double maximumError)
+    {
+        return createRefined(delegate, min, max, 1, maximumError);
+    }
+    
+    /**
+     * Creates a tabulation of the given operator in the given domain,
+     * where the domain is divided into segments, and the number of 
+     * samples is chosen individually for each segment, trying to 
+     * achieve the given maximum error
+     * 
+     * @param delegate The operator
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param maximumError The maximum error
+     * @return The tabulated operator
+     */
+    static TabulatedDoubleUnaryOperator createAdaptive(
+        DoubleUnaryOperator delegate, double min, double max, 
+        double maximumError)
+    {
+        return createRefined(
+            delegate, min, max, ADAPTIVE_SEGMENTS, maximumError);
+    }
+    
+    /**
+     * Creates a tabulation of the given operator in the given domain,
+     * which is divided into the given number of segments. Starting 
+     * with a few intervals in each segment, the number of intervals in 
+     * the segment with the largest error is doubled, until the given 
+     * maximum error is achieved in all segments, or the refinement 
+     * would exceed the {@link #MAXIMUM_SAMPLES}.
+     * 
+     * @param delegate The operator
+     * @param min The minimum of the domain
+     * @param max The maximum of the domain
+     * @param numSegments The number of segments
+     * @param maximumError The maximum error
+     * @return The tabulated operator
+     */
+    private static TabulatedDoubleUnaryOperator createRefined(
+        DoubleUnaryOperator delegate, double min, double max, 
+        int numSegments, double maximumError)
+    {
+        validate(min, max);
+        validate(maximumError);
+        double segmentMins[] = new double[numSegments];
+        double segmentMaxs[] = new double[numSegments];
+        double segmentSize = (max - min) / numSegments;
+        for (int s = 0; s < numSegments; s++)
+        {
+            segmentMins[s] = min + s * segmentSize;
+            segmentMaxs[s] = s == numSegments - 1 ? 
+                max : min + (s + 1) * segmentSize;
+        }
+        double segments[][] = new double[numSegments][];
+        double errors[] = new double[numSegments];
+        int numSamples = 0;
+        for (int s = 0; s < numSegments; s++)
+        {
+            segments[s] = sample(delegate, segmentMins[s], segmentMaxs[s], 
+                INITIAL_INTERVALS_PER_SEGMENT);
+            errors[s] = computeError(
+                delegate, segmentMins[s], segmentMaxs[s], segments[s]);
+            numSamples += segments[s].length;
+        }
+        while (true)
+        {
+            int worst = 0;
+            for (int s = 1; s < numSegments; s++)
+            {
+                if (errors[s] > errors[worst])
+                {
+                    worst = s;
+                }
+            }
+            if (errors[worst] <= maximumError)
+            {
+                break;
+            }
+            int numIntervals = (segments[worst].length - 1) * 2;
+            int newNumSamples = 
+                numSamples - segments[worst].length + numIntervals + 1;
+            if (newNumSamples > MAXIMUM_SAMPLES)
+            {
+                break;
+            }
+            segments[worst] = sample(delegate, 
+                segmentMins[worst], segmentMaxs[worst], numIntervals);
+            errors[worst] = computeError(delegate, 
+                segmentMins[worst], segmentMaxs[worst], segments[worst]);
+            numSamples = newNumSamples;
+        }
+        double error = 0.0;
+        for (int s = 0; s < numSegments; s++)
+        {
+            error = Math.max(error, errors[s]);
+        }
+        return new TabulatedDoubleUnaryOperator(
+            delegate, min, max, segments, error);
+    }
+    
+    /**
+     * Sample the given operator at the borders of the given number of
+     * equidistant intervals in the given range
+     * 
+     * @param delegate The operator
+     * @param min The minimum
+     * @param max The maximum
+     * @param numIntervals The number of intervals
+     * @return The samples
+     */
+    private static double[] sample(DoubleUnaryOperator delegate, 
+        double min, double max, int numIntervals)
+    {
+        double samples[] = new double[numIntervals + 1];
+        for (int i = 0; i < numIntervals; i++)
+        {
+            double x = min + (max - min) * i / numIntervals;
+            samples[i] = delegate.applyAsDouble(x);
+        }
+        samples[numIntervals] = delegate.applyAsDouble(max);
+        return samples;
+    }
+    
+    /**
+     * Computes the maximum absolute difference between the given 
+     * operator and the linear interpolation of the given samples, at
+     * the quarter points of each interval. If any difference is NaN,
+     * then positive infinity is returned.
+     * 
+     * @param delegate The operator
+     * @param min The minimum
+     * @param max The maximum
+     * @param samples The samples
+     * @return The error
+     */
+    private static double computeError(DoubleUnaryOperator delegate, 
+        double min, double max, double samples[])
+    {
+        int numIntervals = samples.length - 1;
+        double error = 0.0;
+        for (int i = 0; i < numIntervals; i++)
+        {
+            for (int q = 1; q <= 3; q++)
+            {
+                double alpha = q * 0.25;
+                double x = min + (max - min) * (i + alpha) / numIntervals;
+                double expected = delegate.applyAsDouble(x);
+                double actual = 
+                    samples[i] + alpha * (samples[i + 1] - samples[i]);
+                double difference = Math.abs(expected - actual);
+                if (Double.isNaN(difference))
+                {
+                    return Double.POSITIVE_INFINITY;
+                }
+                error = Math.max(error, difference);
+            }
+        }
+        return error;
+    }
+    
+    /**
+     * Validate the given domain
+     * 
+     * @param min The minimum
+     * @param max The maximum
+     * @throws IllegalArgumentException If the values are not finite, or
+     * the minimum is not smaller than the maximum
+     */
+    private static void validate(double min, double max)
+    {
+        if (!Double.isFinite(min) || !Double.isFinite(max) || !(min < max)
+            || !Double.isFinite(max - min))
+        {
+            throw new IllegalArgumentException(
+                "The domain must be a finite, non-empty interval, but is [" 
+                + min + "," + max + "]");
+        }
+    }
+    
+    /**
+     * Validate the given maximum error
+     * 
+     * @param maximumError The maximum error
+     * @throws IllegalArgumentException If the maximum error is not 
+     * positive
+     */
+    private static void validate(double maximumError)
+    {
+        if (!(maximumError > 0.0))
+        {
+            throw new IllegalArgumentException(
+                "The maximum error must be positive, but is " 
+                + maximumError);
+        }
+    }
+    
+    /**
+     * Returns the minimum of the domain in which the original operator
+     * is approximated
+     * 
+     * @return The minimum
+     */
+    public double getMinimum()
+    {
+        return min;
+    }
+    
+    /**
+     * Returns the maximum of the domain in which the original operator
+     * is approximated
+     * 
+     * @return The maximum
+     */
+    public double getMaximum()
+    {
+        return max;
+    }
+    
+    /**
+     * Returns the total number of values that have been sampled from 
+     * the original operator and are used for the interpolation
+     * 
+     * @return The number of samples
+     */
+    public int getNumSamples()
+    {
+        return values.length;
+    }
+    
+    /**
+     * Returns the maximum absolute error between the original operator
+     * and this approximation that was observed while sampling. The 
+     * error is measured at three points inside of each interval. So 
+     * this is an estimate, and not a strict upper bound for the error.
+     * If the requested maximum error could not be achieved, then this 
+     * may be larger than the requested one.
+     * 
+     * @return The maximum error
+     */
+    public double getMaximumError()
+    {
+        return maximumError;
+    }
+    
+    @Override
+    public double applyAsDouble(double x)
+    {
+        if (!(x >= min && x <= max))
+        {
+            return delegate.applyAsDouble(x);
+        }
+        double segmentPosition = (x - min) * segmentScale;
+        int s = Math.min((int) segmentPosition, numSegments - 1);
+        int count = counts[s];
+        double intervalPosition = (segmentPosition - s) * count;
+        int i = Math.min((int) intervalPosition, count - 1);
+        double alpha = intervalPosition - i;
+        int index = offsets[s] + i;
+        double v0 = values[index];
+        double v1 = values[index + 1];
+        return v0 + alpha * (v1 - v0);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "TabulatedDoubleUnaryOperator[" 
+            + "domain=[" + min + "," + max + "], "
+            + "numSamples=" + values.length + ", "
+            + "maximumError=" + maximumError + "]";
+    }
+}
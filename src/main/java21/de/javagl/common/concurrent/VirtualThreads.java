@@ -0,0 +1,68 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ * 
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.javagl.common.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Methods related to virtual threads.<br>
+ * <br>
+ * This is the implementation for Java 21 and later, which is contained
+ * in the versioned part of the multi-release JAR.
+ */
+final class VirtualThreads
+{
+    /**
+     * Returns whether virtual threads are supported
+     * 
+     * @return Whether virtual threads are supported
+     */
+    static boolean isSupported()
+    {
+        return true;
+    }
+    
+    /**
+     * Creates an executor service that starts a new virtual thread for 
+     * each task.
+     * 
+     * @return The executor service
+     */
+    static ExecutorService createVirtualThreadPerTaskExecutorService()
+    {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+    
+    /**
+     * Private constructor to prevent instantiation
+     */
+    private VirtualThreads()
+    {
+        // Private constructor to prevent instantiation
+    }
+}
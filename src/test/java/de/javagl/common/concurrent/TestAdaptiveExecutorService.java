@@ -0,0 +1,94 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestAdaptiveExecutorService
+{
+    @Test
+    public void testGrowsForBlockingTasks() throws InterruptedException
+    {
+        AdaptiveExecutorService executorService = 
+            ExecutorServices.createAdaptiveExecutorService(
+                1, 8, 1, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS);
+        AtomicInteger counter = new AtomicInteger();
+        int numTasks = 200;
+        for (int i = 0; i < numTasks; i++)
+        {
+            executorService.execute(() -> 
+            {
+                sleep(10);
+                counter.incrementAndGet();
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(numTasks, counter.get());
+        assertTrue(executorService.getCorePoolSize() > 1);
+        assertTrue(executorService.getCpuUtilization() < 0.5);
+    }
+    
+    @Test(timeout = 10000)
+    public void testGrowsWhileAllWorkersAreBlocked() 
+        throws InterruptedException
+    {
+        AdaptiveExecutorService executorService = 
+            ExecutorServices.createAdaptiveExecutorService(
+                1, 4, 1, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        // No task finishes until the pool has grown, so the adjustment 
+        // can only be triggered by the submissions
+        while (executorService.getCorePoolSize() == 1)
+        {
+            executorService.execute(() -> await(release));
+            sleep(50);
+        }
+        release.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPoolSizes()
+    {
+        ExecutorServices.createAdaptiveExecutorService(
+            4, 2, 1, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS);
+    }
+    
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
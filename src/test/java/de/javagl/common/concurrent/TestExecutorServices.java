@@ -0,0 +1,332 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import de.javagl.common.concurrent.ExecutorServices.BackpressurePolicy;
+
+@SuppressWarnings("javadoc")
+public class TestExecutorServices
+{
+    @Test(timeout = 10000)
+    public void testReportingExecuteFailures() throws InterruptedException
+    {
+        int numTasks = 100;
+        List<Throwable> failures = 
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Set<Thread> threads = 
+            Collections.synchronizedSet(new HashSet<Thread>());
+        CountDownLatch reported = new CountDownLatch(numTasks);
+        ExecutorService executorService = 
+            ExecutorServices.createFixedTimeoutReportingExecutorService(
+                2, 5, TimeUnit.SECONDS, false, t -> 
+                {
+                    failures.add(t);
+                    reported.countDown();
+                });
+        for (int i = 0; i < numTasks; i++)
+        {
+            executorService.execute(() -> 
+            {
+                threads.add(Thread.currentThread());
+                throw new IllegalStateException("Expected");
+            });
+        }
+        reported.await();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(numTasks, failures.size());
+        for (Throwable failure : failures)
+        {
+            assertTrue(failure instanceof IllegalStateException);
+        }
+        
+        // The failures did not cause the worker threads to terminate
+        assertEquals(2, threads.size());
+    }
+    
+    @Test(timeout = 10000)
+    public void testReportingSubmitFailures() throws InterruptedException
+    {
+        List<Throwable> failures = 
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        CountDownLatch reported = new CountDownLatch(1);
+        ExecutorService executorService = 
+            ExecutorServices.createFixedTimeoutReportingExecutorService(
+                1, 5, TimeUnit.SECONDS, false, t -> 
+                {
+                    failures.add(t);
+                    reported.countDown();
+                });
+        executorService.submit(() -> 
+        {
+            throw new IllegalStateException("Expected");
+        });
+        reported.await();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof IllegalStateException);
+    }
+    
+    @Test(timeout = 10000)
+    public void testReportingCancellation() throws InterruptedException
+    {
+        assertEquals(1, countReportedCancellations(true));
+        assertEquals(0, countReportedCancellations(false));
+    }
+    
+    private static int countReportedCancellations(boolean reportCancellation)
+        throws InterruptedException
+    {
+        List<Throwable> failures = 
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        ExecutorService executorService = 
+            ExecutorServices.createFixedTimeoutReportingExecutorService(
+                1, 5, TimeUnit.SECONDS, reportCancellation, failures::add);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> await(release));
+        Future<?> future = executorService.submit(() -> {});
+        future.cancel(false);
+        release.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        for (Throwable failure : failures)
+        {
+            assertTrue(failure instanceof CancellationException);
+        }
+        return failures.size();
+    }
+    
+    @Test(timeout = 10000)
+    public void testReportingWithFailingHandler() throws InterruptedException
+    {
+        List<Throwable> uncaught = 
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread.UncaughtExceptionHandler defaultHandler = 
+            Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(
+            (thread, t) -> uncaught.add(t));
+        try
+        {
+            ExecutorService executorService = 
+                ExecutorServices.createFixedTimeoutReportingExecutorService(
+                    1, 5, TimeUnit.SECONDS, false, t -> 
+                    {
+                        throw new IllegalArgumentException("Expected");
+                    });
+            Set<Thread> threads = 
+                Collections.synchronizedSet(new HashSet<Thread>());
+            for (int i = 0; i < 10; i++)
+            {
+                executorService.execute(() -> 
+                {
+                    threads.add(Thread.currentThread());
+                    throw new IllegalStateException("Expected");
+                });
+            }
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+            
+            // The exceptions of the handler are passed to the uncaught
+            // exception handler, and do not terminate the worker thread
+            assertEquals(1, threads.size());
+            assertEquals(10, uncaught.size());
+            for (Throwable t : uncaught)
+            {
+                assertTrue(t instanceof IllegalArgumentException);
+            }
+        }
+        finally
+        {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+    }
+    
+    // Creates a bounded executor service with one thread and a queue 
+    // capacity of one, where the thread and the queue are occupied 
+    // until the given latch is counted down
+    private static ExecutorService createFullExecutorService(
+        BackpressurePolicy backpressurePolicy, long offerTimeoutMs, 
+        CountDownLatch release) throws InterruptedException
+    {
+        ExecutorService executorService = backpressurePolicy != null ?
+            ExecutorServices.createFixedTimeoutBoundedExecutorService(
+                1, 5, TimeUnit.SECONDS, 1, backpressurePolicy) :
+            ExecutorServices.createFixedTimeoutBoundedExecutorService(
+                1, 5, TimeUnit.SECONDS, 1, 
+                offerTimeoutMs, TimeUnit.MILLISECONDS);
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> 
+        {
+            started.countDown();
+            await(release);
+        });
+        started.await();
+        executorService.execute(() -> {});
+        return executorService;
+    }
+    
+    @Test(timeout = 10000)
+    public void testBoundedBlock() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = createFullExecutorService(
+            BackpressurePolicy.BLOCK, 0, release);
+        CountDownLatch executed = new CountDownLatch(1);
+        Thread submitter = new Thread(
+            () -> executorService.execute(executed::countDown));
+        submitter.start();
+        while (submitter.getState() != Thread.State.WAITING)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, executed.getCount());
+        release.countDown();
+        submitter.join();
+        executed.await();
+        executorService.shutdown();
+        try
+        {
+            executorService.execute(() -> {});
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test(timeout = 10000)
+    public void testBoundedCallerRuns() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = createFullExecutorService(
+            BackpressurePolicy.CALLER_RUNS, 0, release);
+        AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        executorService.execute(() -> thread.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), thread.get());
+        release.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test(timeout = 10000)
+    public void testBoundedOfferTimeout() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = 
+            createFullExecutorService(null, 50, release);
+        long before = System.nanoTime();
+        try
+        {
+            executorService.execute(() -> {});
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        long after = System.nanoTime();
+        assertTrue(after - before >= TimeUnit.MILLISECONDS.toNanos(50));
+        release.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test(timeout = 10000)
+    public void testBoundedOfferSucceedsWithinTimeout() 
+        throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = 
+            createFullExecutorService(null, 5000, release);
+        Thread releaser = new Thread(() -> 
+        {
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        CountDownLatch executed = new CountDownLatch(1);
+        executorService.execute(executed::countDown);
+        executed.await();
+        releaser.join();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    @Test(timeout = 10000)
+    public void testVirtualThreadExecutorService() throws InterruptedException
+    {
+        ExecutorService executorService = 
+            ExecutorServices.createVirtualThreadExecutorService(
+                3, 5, TimeUnit.SECONDS);
+        if (ExecutorServices.isVirtualThreadSupported())
+        {
+            assertFalse(executorService instanceof ThreadPoolExecutor);
+        }
+        else
+        {
+            // The fallback is a fixed pool with the given parameters
+            ThreadPoolExecutor threadPoolExecutor = 
+                (ThreadPoolExecutor) executorService;
+            assertEquals(3, threadPoolExecutor.getCorePoolSize());
+            assertEquals(3, threadPoolExecutor.getMaximumPoolSize());
+            assertEquals(5, threadPoolExecutor.getKeepAliveTime(
+                TimeUnit.SECONDS));
+        }
+        int numTasks = 100;
+        CountDownLatch done = new CountDownLatch(numTasks);
+        for (int i = 0; i < numTasks; i++)
+        {
+            executorService.execute(done::countDown);
+        }
+        done.await();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+    
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestInstrumentedExecutorService
+{
+    @Test
+    public void testHistogramBuckets()
+    {
+        long values[] = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789L, 
+            Long.MAX_VALUE };
+        for (long value : values)
+        {
+            int index = ConcurrentHistogram.bucketIndex(value);
+            long highest = ConcurrentHistogram.highestValueInBucket(index);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= 
+                value / ConcurrentHistogram.SUB_BUCKET_COUNT);
+        }
+    }
+    
+    @Test
+    public void testHistogramPercentiles()
+    {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500.0, snapshot.getMean(), 1e-6);
+        assertEquals(500000.0, snapshot.getValueAtPercentile(50), 20000.0);
+        assertEquals(990000.0, snapshot.getValueAtPercentile(99), 40000.0);
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+    }
+    
+    @Test
+    public void testStatistics() throws InterruptedException
+    {
+        InstrumentedExecutorService executorService = 
+            new InstrumentedExecutorService(1, 1, 1, TimeUnit.SECONDS, 
+                new ArrayBlockingQueue<Runnable>(1), 
+                new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> 
+        {
+            started.countDown();
+            await(release);
+        });
+        started.await();
+        executorService.execute(() -> {});
+        try
+        {
+            executorService.execute(() -> {});
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        ExecutorStatistics statistics = executorService.getStatistics();
+        assertEquals(1, statistics.getActiveCount());
+        assertEquals(1, statistics.getQueueSize());
+        assertEquals(1, statistics.getRejectedTaskCount());
+        
+        release.countDown();
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+        statistics = executorService.getStatistics();
+        assertEquals(2, statistics.getExecutionTimes().getCount());
+        assertEquals(2, statistics.getQueueWaitTimes().getCount());
+        assertEquals(3, statistics.getQueueSizes().getCount());
+        assertEquals(1, statistics.getPeakActiveCount());
+        assertEquals(0, statistics.getActiveCount());
+    }
+    
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestKeyedSerialExecutor
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = 
+            ExecutorServices.createFixedTimeoutReportingExecutorService(
+                4, 5, TimeUnit.SECONDS, false, t -> {});
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test(timeout = 10000)
+    public void testOrderPerKey() throws InterruptedException
+    {
+        int numKeys = 10;
+        int numTasksPerKey = 1000;
+        KeyedSerialExecutor keyedSerialExecutor = 
+            new KeyedSerialExecutor(4, executorService);
+        List<List<Integer>> results = new ArrayList<List<Integer>>();
+        for (int k = 0; k < numKeys; k++)
+        {
+            results.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(numKeys * numTasksPerKey);
+        for (int i = 0; i < numTasksPerKey; i++)
+        {
+            for (int k = 0; k < numKeys; k++)
+            {
+                final int key = k;
+                final int value = i;
+                keyedSerialExecutor.execute("key" + key, () -> 
+                {
+                    results.get(key).add(value);
+                    done.countDown();
+                });
+            }
+        }
+        done.await();
+        for (int k = 0; k < numKeys; k++)
+        {
+            List<Integer> result = results.get(k);
+            assertEquals(numTasksPerKey, result.size());
+            for (int i = 0; i < numTasksPerKey; i++)
+            {
+                assertEquals(i, result.get(i).intValue());
+            }
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testFailingTaskDoesNotStallLane() throws InterruptedException
+    {
+        KeyedSerialExecutor keyedSerialExecutor = 
+            new KeyedSerialExecutor(1, executorService);
+        CountDownLatch done = new CountDownLatch(1);
+        keyedSerialExecutor.execute("key", () -> 
+        {
+            throw new IllegalStateException("Expected");
+        });
+        keyedSerialExecutor.execute("key", () -> done.countDown());
+        done.await();
+    }
+    
+    @Test
+    public void testRejectedTaskIsNotExecuted()
+    {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        Executor executor = command -> 
+        {
+            if (reject.get())
+            {
+                throw new RejectedExecutionException("Expected");
+            }
+            command.run();
+        };
+        KeyedSerialExecutor keyedSerialExecutor = 
+            new KeyedSerialExecutor(1, executor);
+        AtomicBoolean rejectedTaskExecuted = new AtomicBoolean();
+        Runnable rejectedTask = () -> rejectedTaskExecuted.set(true);
+        try
+        {
+            keyedSerialExecutor.execute("key", rejectedTask);
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        reject.set(false);
+        AtomicBoolean executed = new AtomicBoolean();
+        keyedSerialExecutor.execute("key", () -> executed.set(true));
+        assertTrue(executed.get());
+        assertFalse(rejectedTaskExecuted.get());
+    }
+    
+    @Test
+    public void testRejectedLaneRunsAcceptedTasks()
+    {
+        List<Runnable> accepted = new ArrayList<Runnable>();
+        Executor executor = command -> 
+        {
+            if (!accepted.isEmpty())
+            {
+                throw new RejectedExecutionException("Expected");
+            }
+            accepted.add(command);
+        };
+        KeyedSerialExecutor keyedSerialExecutor = 
+            new KeyedSerialExecutor(1, executor);
+        int numTasks = 200;
+        List<Integer> result = new ArrayList<Integer>();
+        keyedSerialExecutor.execute("key", () -> 
+        {
+            throw new IllegalStateException("Expected");
+        });
+        for (int i = 0; i < numTasks; i++)
+        {
+            final int value = i;
+            keyedSerialExecutor.execute("key", () -> result.add(value));
+        }
+        assertEquals(1, accepted.size());
+        try
+        {
+            accepted.get(0).run();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected: The exception of the task is not replaced by
+            // the rejection when the lane is passed to the executor
+        }
+        assertEquals(numTasks, result.size());
+        for (int i = 0; i < numTasks; i++)
+        {
+            assertEquals(i, result.get(i).intValue());
+        }
+    }
+    
+    @Test
+    public void testSameTaskSubmittedRepeatedly()
+    {
+        List<Runnable> accepted = new ArrayList<Runnable>();
+        AtomicBoolean reject = new AtomicBoolean();
+        Executor executor = command -> 
+        {
+            if (reject.get())
+            {
+                throw new RejectedExecutionException("Expected");
+            }
+            accepted.add(command);
+        };
+        KeyedSerialExecutor keyedSerialExecutor = 
+            new KeyedSerialExecutor(1, executor);
+        List<Integer> result = new ArrayList<Integer>();
+        Runnable task = () -> result.add(result.size());
+        keyedSerialExecutor.execute("key", task);
+        keyedSerialExecutor.execute("key", task);
+        accepted.get(0).run();
+        assertEquals(2, result.size());
+        
+        reject.set(true);
+        try
+        {
+            keyedSerialExecutor.execute("key", task);
+            fail("Expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        assertEquals(2, result.size());
+    }
+}
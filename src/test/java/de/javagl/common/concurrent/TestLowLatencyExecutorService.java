@@ -0,0 +1,170 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestLowLatencyExecutorService
+{
+    @Test
+    public void testQueue()
+    {
+        LockFreeTaskQueue queue = new LockFreeTaskQueue(3);
+        assertEquals(4, queue.capacity());
+        Runnable r = () -> {};
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(queue.offer(r));
+        }
+        assertTrue(!queue.offer(r));
+        assertEquals(4, queue.size());
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(r, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void testManyProducers() throws InterruptedException
+    {
+        LowLatencyExecutorService executorService = 
+            new LowLatencyExecutorService(2, 1 << 16);
+        AtomicInteger counter = new AtomicInteger();
+        int numProducers = 4;
+        int numTasksPerProducer = 10000;
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < numProducers; p++)
+        {
+            producers.add(new Thread(() -> 
+            {
+                for (int i = 0; i < numTasksPerProducer; i++)
+                {
+                    executorService.execute(counter::incrementAndGet);
+                }
+            }));
+        }
+        for (Thread producer : producers)
+        {
+            producer.start();
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(numProducers * numTasksPerProducer, counter.get());
+    }
+    
+    @Test
+    public void testSubmitAfterIdle() 
+        throws InterruptedException, ExecutionException
+    {
+        LowLatencyExecutorService executorService = 
+            new LowLatencyExecutorService(2, 16);
+        for (int i = 0; i < 10; i++)
+        {
+            Thread.sleep(5);
+            Future<Integer> future = executorService.submit(() -> 42);
+            assertEquals(Integer.valueOf(42), future.get());
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testRejection() throws InterruptedException
+    {
+        LowLatencyExecutorService executorService = 
+            new LowLatencyExecutorService(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> 
+        {
+            started.countDown();
+            await(release);
+        });
+        started.await();
+        executorService.execute(() -> {});
+        executorService.execute(() -> {});
+        try
+        {
+            executorService.execute(() -> {});
+            assertTrue("Expected rejection", false);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        release.countDown();
+        executorService.shutdown();
+        try
+        {
+            executorService.execute(() -> {});
+            assertTrue("Expected rejection", false);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executorService.isTerminated());
+    }
+    
+    @Test(timeout = 10000)
+    public void testWorkerIsParkedAfterInterrupt() 
+        throws InterruptedException, ExecutionException
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        LowLatencyExecutorService executorService = 
+            new LowLatencyExecutorService(1, 16, runnable -> 
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                threads.add(thread);
+                return thread;
+            });
+        executorService.execute(() -> Thread.currentThread().interrupt());
+        Thread worker = threads.get(0);
+        while (worker.getState() != Thread.State.WAITING)
+        {
+            Thread.sleep(10);
+        }
+        Future<Boolean> future = executorService.submit(
+            () -> Thread.currentThread().isInterrupted());
+        assertEquals(Boolean.FALSE, future.get());
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+    
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
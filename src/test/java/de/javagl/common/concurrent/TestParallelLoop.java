@@ -0,0 +1,90 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelLoop
+{
+    @Test
+    public void testRepeatedExecution()
+    {
+        try (ParallelLoop parallelLoop = new ParallelLoop(4))
+        {
+            for (int max = 0; max < 50; max++)
+            {
+                for (int repetition = 0; repetition < 20; repetition++)
+                {
+                    AtomicIntegerArray counts = new AtomicIntegerArray(max);
+                    parallelLoop.execute(0, max, (taskIndex, min, localMax) -> 
+                    {
+                        for (int i = min; i < localMax; i++)
+                        {
+                            counts.incrementAndGet(i);
+                        }
+                    });
+                    for (int i = 0; i < max; i++)
+                    {
+                        assertEquals(1, counts.get(i));
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testSubRangesMatchParallelRangeExecutor()
+    {
+        try (ParallelLoop parallelLoop = new ParallelLoop(3))
+        {
+            int bounds[] = new int[6];
+            parallelLoop.execute(10, 21, (taskIndex, min, max) -> 
+            {
+                bounds[taskIndex * 2 + 0] = min;
+                bounds[taskIndex * 2 + 1] = max;
+            });
+            assertEquals(10, bounds[0]);
+            assertEquals(bounds[1], bounds[2]);
+            assertEquals(bounds[3], bounds[4]);
+            assertEquals(21, bounds[5]);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsPassedToCaller()
+    {
+        try (ParallelLoop parallelLoop = new ParallelLoop(4))
+        {
+            parallelLoop.execute(0, 100, (taskIndex, min, max) -> 
+            {
+                if (taskIndex == 2)
+                {
+                    throw new IllegalStateException("Expected");
+                }
+            });
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReentrantExecutionIsRejected()
+    {
+        try (ParallelLoop parallelLoop = new ParallelLoop(2))
+        {
+            parallelLoop.execute(0, 2, (taskIndex, min, max) -> 
+            {
+                if (taskIndex == 0)
+                {
+                    parallelLoop.execute(0, 2, (t, a, b) -> {});
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeExecutorAsync
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newSingleThreadExecutor();
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test
+    public void testCompletion()
+    {
+        AtomicIntegerArray counts = new AtomicIntegerArray(100);
+        CompletableFuture<Void> future = ParallelRangeExecutor.executeAsync(
+            4, executorService, 0, 100, (taskIndex, min, max) -> 
+        {
+            for (int i = min; i < max; i++)
+            {
+                counts.incrementAndGet(i);
+            }
+        });
+        future.join();
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+    
+    @Test
+    public void testEmptyRange()
+    {
+        CompletableFuture<Void> future = ParallelRangeExecutor.executeAsync(
+            4, executorService, 10, 10, (taskIndex, min, max) -> 
+        {
+            fail("Should not be called");
+        });
+        assertTrue(future.isDone());
+    }
+    
+    @Test
+    public void testFailureSkipsRemainingSubRanges()
+    {
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<Void> future = ParallelRangeExecutor.executeAsync(
+            10, executorService, 0, 10, (taskIndex, min, max) -> 
+        {
+            executed.incrementAndGet();
+            throw new IllegalStateException("Expected");
+        });
+        try
+        {
+            future.join();
+            fail("Expected an exception");
+        }
+        catch (CompletionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        
+        // Wait until the executor processed all (skipped) sub-ranges
+        ParallelRangeExecutor.executeAsync(
+            1, executorService, 0, 1, (taskIndex, min, max) -> {}).join();
+        assertEquals(1, executed.get());
+    }
+}
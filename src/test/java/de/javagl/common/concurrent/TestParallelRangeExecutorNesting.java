@@ -0,0 +1,98 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeExecutorNesting
+{
+    @Test(timeout = 10000)
+    public void testNestedExecutionOnFixedPool()
+    {
+        ExecutorService executorService = 
+            ExecutorServices.createFixedTimeoutExecutorService(
+                2, 5, TimeUnit.SECONDS);
+        try
+        {
+            assertNestedExecution(executorService);
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testNestedExecutionOnForkJoinPool()
+    {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+        try
+        {
+            assertNestedExecution(forkJoinPool);
+        }
+        finally
+        {
+            forkJoinPool.shutdown();
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testExecutionOnShutdownExecutorService()
+    {
+        ExecutorService executorService = 
+            ExecutorServices.createFixedTimeoutExecutorService(
+                2, 5, TimeUnit.SECONDS);
+        executorService.shutdown();
+        AtomicIntegerArray counts = new AtomicIntegerArray(10);
+        ParallelRangeExecutor.execute(4, executorService, 0, 10, 
+            (taskIndex, min, max) -> 
+        {
+            for (int i = min; i < max; i++)
+            {
+                counts.incrementAndGet(i);
+            }
+        });
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+    
+    private static void assertNestedExecution(
+        ExecutorService executorService)
+    {
+        int size = 8;
+        AtomicIntegerArray counts = new AtomicIntegerArray(size * size);
+        ParallelRangeExecutor.execute(4, executorService, 0, size, 
+            (outerTaskIndex, outerMin, outerMax) -> 
+        {
+            for (int i = outerMin; i < outerMax; i++)
+            {
+                final int offset = i * size;
+                ParallelRangeExecutor.execute(4, executorService, 0, size, 
+                    (taskIndex, min, max) -> 
+                {
+                    for (int j = min; j < max; j++)
+                    {
+                        counts.incrementAndGet(offset + j);
+                    }
+                });
+            }
+        });
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+}
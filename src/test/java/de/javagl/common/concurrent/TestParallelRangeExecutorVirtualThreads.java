@@ -0,0 +1,60 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeExecutorVirtualThreads
+{
+    @Test(timeout = 10000)
+    public void testAllIndicesAreProcessedOnce()
+    {
+        int min = 3;
+        int max = 1003;
+        AtomicIntegerArray counts = new AtomicIntegerArray(max);
+        ParallelRangeExecutor.executeOnVirtualThreads(8, min, max, 
+            (taskIndex, localMin, localMax) -> 
+        {
+            for (int i = localMin; i < localMax; i++)
+            {
+                counts.incrementAndGet(i);
+            }
+        });
+        for (int i = 0; i < max; i++)
+        {
+            assertEquals(i < min ? 0 : 1, counts.get(i));
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testEmptyRange()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ParallelRangeExecutor.executeOnVirtualThreads(4, 5, 5, 
+            (taskIndex, localMin, localMax) -> calls.incrementAndGet());
+        assertEquals(0, calls.get());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism()
+    {
+        ParallelRangeExecutor.executeOnVirtualThreads(0, 0, 10, 
+            (taskIndex, localMin, localMax) -> {});
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange()
+    {
+        ParallelRangeExecutor.executeOnVirtualThreads(4, 10, 0, 
+            (taskIndex, localMin, localMax) -> {});
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeExecutorWeighted
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test
+    public void testAllIndicesAreProcessedOnce()
+    {
+        for (int parallelism = 1; parallelism <= 5; parallelism++)
+        {
+            for (int max = 0; max < 30; max++)
+            {
+                AtomicIntegerArray counts = new AtomicIntegerArray(max);
+                ParallelRangeExecutor.executeWeighted(parallelism, 
+                    executorService, 0, max, i -> i * i, 
+                    (taskIndex, min, localMax) -> 
+                {
+                    assertTrue(min < localMax);
+                    for (int i = min; i < localMax; i++)
+                    {
+                        counts.incrementAndGet(i);
+                    }
+                });
+                for (int i = 0; i < max; i++)
+                {
+                    assertEquals(1, counts.get(i));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testSubRangesHaveEqualCost()
+    {
+        // The cost of the first 10 elements is 1, the cost of the last
+        // 10 elements is 9. The total cost is 100. The best split is
+        // at 14, with costs 46 and 54.
+        double costPrefixSums[] = new double[21];
+        for (int i = 0; i < 20; i++)
+        {
+            costPrefixSums[i + 1] = costPrefixSums[i] + (i < 10 ? 1 : 9);
+        }
+        int bounds[] = new int[4];
+        ParallelRangeExecutor.executeWeighted(2, executorService, 
+            100, 120, costPrefixSums, (taskIndex, min, max) -> 
+        {
+            bounds[taskIndex * 2 + 0] = min;
+            bounds[taskIndex * 2 + 1] = max;
+        });
+        assertEquals(100, bounds[0]);
+        assertEquals(114, bounds[1]);
+        assertEquals(114, bounds[2]);
+        assertEquals(120, bounds[3]);
+    }
+}
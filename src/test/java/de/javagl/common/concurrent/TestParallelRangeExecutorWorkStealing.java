@@ -0,0 +1,117 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeExecutorWorkStealing
+{
+    private ForkJoinPool forkJoinPool;
+    
+    @Before
+    public void setUp()
+    {
+        forkJoinPool = new ForkJoinPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        forkJoinPool.shutdown();
+    }
+    
+    @Test
+    public void testAllIndicesAreProcessedOnce()
+    {
+        for (int min = -5; min < 5; min++)
+        {
+            for (int max = min; max < 200; max += 7)
+            {
+                int parallelism = 3;
+                AtomicIntegerArray counts = 
+                    new AtomicIntegerArray(max - min);
+                final int globalMin = min;
+                ParallelRangeExecutor.executeWorkStealing(
+                    parallelism, forkJoinPool, min, max, 1, 
+                    (taskIndex, localMin, localMax) ->
+                {
+                    assertTrue(taskIndex >= 0 && taskIndex < parallelism);
+                    for (int i = localMin; i < localMax; i++)
+                    {
+                        counts.incrementAndGet(i - globalMin);
+                    }
+                });
+                for (int i = 0; i < counts.length(); i++)
+                {
+                    assertEquals(1, counts.get(i));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testTaskIndicesAreNotUsedConcurrently()
+    {
+        int parallelism = 2;
+        AtomicIntegerArray active = new AtomicIntegerArray(parallelism);
+        ParallelRangeExecutor.executeWorkStealing(
+            parallelism, forkJoinPool, 0, 1000, 1, 
+            (taskIndex, localMin, localMax) ->
+        {
+            assertEquals(1, active.incrementAndGet(taskIndex));
+            Thread.yield();
+            assertEquals(0, active.decrementAndGet(taskIndex));
+        });
+    }
+    
+    @Test
+    public void testNestedExecution()
+    {
+        AtomicIntegerArray counts = new AtomicIntegerArray(100);
+        ParallelRangeExecutor.executeWorkStealing(
+            forkJoinPool, 0, 10, (outerTaskIndex, outerMin, outerMax) ->
+        {
+            for (int i = outerMin; i < outerMax; i++)
+            {
+                final int offset = i * 10;
+                ParallelRangeExecutor.executeWorkStealing(
+                    forkJoinPool, 0, 10, (taskIndex, localMin, localMax) ->
+                {
+                    for (int j = localMin; j < localMax; j++)
+                    {
+                        counts.incrementAndGet(offset + j);
+                    }
+                });
+            }
+        });
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsPassedToCaller()
+    {
+        ParallelRangeExecutor.executeWorkStealing(
+            forkJoinPool, 0, 100, (taskIndex, localMin, localMax) ->
+        {
+            if (localMin <= 50 && 50 < localMax)
+            {
+                throw new IllegalStateException("Expected");
+            }
+        });
+    }
+}
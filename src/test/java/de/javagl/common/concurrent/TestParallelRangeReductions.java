@@ -0,0 +1,253 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelRangeReductions
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test
+    public void testPrimitiveSums()
+    {
+        for (int parallelism = 1; parallelism <= 9; parallelism++)
+        {
+            for (int max = 0; max < 50; max++)
+            {
+                int expected = max * (max - 1) / 2;
+                assertEquals(expected, ParallelRangeReductions.reduceInt(
+                    parallelism, executorService, 0, max, 0, 
+                    (taskIndex, min, localMax) -> sum(min, localMax),
+                    Integer::sum));
+                assertEquals(expected, ParallelRangeReductions.reduceLong(
+                    parallelism, executorService, 0, max, 0, 
+                    (taskIndex, min, localMax) -> sum(min, localMax),
+                    Long::sum));
+                assertEquals(expected, ParallelRangeReductions.reduceDouble(
+                    parallelism, executorService, 0, max, 0, 
+                    (taskIndex, min, localMax) -> sum(min, localMax),
+                    Double::sum), 0.0);
+            }
+        }
+    }
+    
+    private static int sum(int min, int max)
+    {
+        int sum = 0;
+        for (int i = min; i < max; i++)
+        {
+            sum += i;
+        }
+        return sum;
+    }
+    
+    @Test
+    public void testOrderIsPreserved()
+    {
+        for (int parallelism = 1; parallelism <= 9; parallelism++)
+        {
+            String result = ParallelRangeReductions.reduce(
+                parallelism, executorService, 0, 10, "", 
+                (taskIndex, min, max) -> 
+            {
+                StringBuilder sb = new StringBuilder();
+                for (int i = min; i < max; i++)
+                {
+                    sb.append(i);
+                }
+                return sb.toString();
+            }, String::concat);
+            assertEquals("0123456789", result);
+        }
+    }
+    
+    @Test
+    public void testHistogram()
+    {
+        int values[] = { 0, 1, 1, 2, 2, 2, 3, 3, 3, 3 };
+        int histogram[] = ParallelRangeReductions.reduce(
+            3, executorService, 0, values.length, new int[4], 
+            (taskIndex, min, max) -> 
+        {
+            int localHistogram[] = new int[4];
+            for (int i = min; i < max; i++)
+            {
+                localHistogram[values[i]]++;
+            }
+            return localHistogram;
+        }, (a, b) -> 
+        {
+            for (int i = 0; i < a.length; i++)
+            {
+                a[i] += b[i];
+            }
+            return a;
+        });
+        assertArrayEquals(new int[] { 1, 2, 3, 4 }, histogram);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsPassedToCaller()
+    {
+        ParallelRangeReductions.reduceInt(
+            4, executorService, 0, 100, 0, (taskIndex, min, max) ->
+        {
+            throw new IllegalStateException("Expected");
+        }, Integer::sum);
+    }
+    
+    @Test
+    public void testDeterministicSum()
+    {
+        Random random = new Random(0);
+        double values[] = new double[10000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = (random.nextDouble() - 0.5) * 
+                Math.pow(10, random.nextInt(20));
+        }
+        for (boolean compensated : new boolean[] { false, true })
+        {
+            double expected = ParallelRangeReductions.sumDeterministic(
+                1, executorService, values, 3, values.length, compensated);
+            for (int parallelism = 2; parallelism <= 13; parallelism++)
+            {
+                double actual = ParallelRangeReductions.sumDeterministic(
+                    parallelism, executorService, 
+                    values, 3, values.length, compensated);
+                assertEquals(Double.doubleToLongBits(expected), 
+                    Double.doubleToLongBits(actual));
+                double functionSum = ParallelRangeReductions.sumDeterministic(
+                    parallelism, executorService, 3, values.length, 
+                    i -> values[i], compensated);
+                if (compensated)
+                {
+                    assertEquals(Double.doubleToLongBits(expected), 
+                        Double.doubleToLongBits(functionSum));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testCompensatedSum()
+    {
+        double values[] = new double[3000];
+        for (int i = 0; i < values.length; i += 3)
+        {
+            values[i] = 1e16;
+            values[i + 1] = 1.0;
+            values[i + 2] = -1e16;
+        }
+        assertEquals(1000.0, ParallelRangeReductions.sumDeterministic(
+            4, executorService, values, 0, values.length, true), 0.0);
+        assertEquals(0.0, ParallelRangeReductions.sumDeterministic(
+            4, executorService, values, 0, 0, true), 0.0);
+    }
+    
+    @Test
+    public void testExactSum()
+    {
+        Random random = new Random(0);
+        double values[] = new double[10000];
+        BigDecimal exact = BigDecimal.ZERO;
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = (random.nextDouble() - 0.5) * 
+                Math.pow(10, random.nextInt(40) - 20);
+            exact = exact.add(new BigDecimal(values[i]));
+        }
+        double expected = exact.doubleValue();
+        for (int parallelism = 1; parallelism <= 13; parallelism++)
+        {
+            assertEquals(Double.doubleToLongBits(expected), 
+                Double.doubleToLongBits(ParallelRangeReductions.sumExact(
+                    parallelism, executorService, values, 0, values.length)));
+        }
+        
+        double cancelling[] = new double[3000];
+        for (int i = 0; i < cancelling.length; i += 3)
+        {
+            cancelling[i] = 1e100;
+            cancelling[i + 1] = 1.0;
+            cancelling[i + 2] = -1e100;
+        }
+        assertEquals(1000.0, ParallelRangeReductions.sumExact(
+            4, executorService, cancelling, 0, cancelling.length), 0.0);
+        
+        // Exactly half an ulp of 1.0 is rounded to even, but slightly
+        // more or less than half an ulp is rounded to nearest
+        assertEquals(1.0, ParallelRangeReductions.sumExact(
+            4, executorService, 0, 2, 
+            i -> new double[] { 1.0, 0x1p-53 }[i]), 0.0);
+        assertEquals(1.0 + 0x1p-52, ParallelRangeReductions.sumExact(
+            4, executorService, 0, 3, 
+            i -> new double[] { 1.0, 0x1p-53, 0x1p-106 }[i]), 0.0);
+        assertEquals(1.0, ParallelRangeReductions.sumExact(
+            4, executorService, 0, 3, 
+            i -> new double[] { 1.0, 0x1p-53, -0x1p-106 }[i]), 0.0);
+        assertEquals(0.0, ParallelRangeReductions.sumExact(
+            4, executorService, values, 0, 0), 0.0);
+    }
+    
+    @Test
+    public void testExactSumWithSpecialValues()
+    {
+        double values[] = new double[3000];
+        Arrays.fill(values, Double.MAX_VALUE);
+        for (int i = 1; i < values.length; i += 2)
+        {
+            values[i] = -Double.MAX_VALUE;
+        }
+        values[values.length - 1] = -1e300;
+        
+        // The intermediate sums exceed the range of double values when
+        // the values are sorted, but the exact sum does not
+        double expected = Double.MAX_VALUE - 1e300;
+        assertEquals(expected, ParallelRangeReductions.sumExact(
+            4, executorService, values, 0, values.length), 0.0);
+        Arrays.sort(values);
+        assertEquals(expected, ParallelRangeReductions.sumExact(
+            4, executorService, values, 0, values.length), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, 
+            ParallelRangeReductions.sumExact(4, executorService, 
+                values, 1500, values.length), 0.0);
+        
+        values[7] = Double.NEGATIVE_INFINITY;
+        assertEquals(Double.NEGATIVE_INFINITY, 
+            ParallelRangeReductions.sumExact(4, executorService, 
+                values, 0, values.length), 0.0);
+        values[2000] = Double.POSITIVE_INFINITY;
+        assertTrue(Double.isNaN(ParallelRangeReductions.sumExact(
+            4, executorService, values, 0, values.length)));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelScans
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test
+    public void testIntScans()
+    {
+        for (int parallelism = 1; parallelism <= 9; parallelism++)
+        {
+            for (int n = 0; n < 40; n++)
+            {
+                int source[] = new int[n];
+                Arrays.setAll(source, i -> i * 3 - 7);
+                int expectedInclusive[] = source.clone();
+                Arrays.parallelPrefix(expectedInclusive, Integer::sum);
+                int expectedExclusive[] = new int[n];
+                for (int i = 1; i < n; i++)
+                {
+                    expectedExclusive[i] = expectedInclusive[i - 1];
+                }
+                
+                int inclusive[] = new int[n];
+                ParallelScans.inclusiveScan(parallelism, executorService, 
+                    source, inclusive, Integer::sum);
+                assertArrayEquals(expectedInclusive, inclusive);
+                
+                int exclusive[] = source.clone();
+                ParallelScans.exclusiveScan(parallelism, executorService, 
+                    exclusive, exclusive, 0, Integer::sum);
+                assertArrayEquals(expectedExclusive, exclusive);
+            }
+        }
+    }
+    
+    @Test
+    public void testNonCommutativeLongScan()
+    {
+        // Concatenation of decimal digits is associative but not 
+        // commutative
+        long source[] = { 1, 2, 3, 4, 5, 6, 7 };
+        long target[] = new long[source.length];
+        ParallelScans.inclusiveScan(3, executorService, source, target, 
+            TestParallelScans::concat);
+        assertArrayEquals(new long[] { 
+            1, 12, 123, 1234, 12345, 123456, 1234567 }, target);
+    }
+    
+    private static long concat(long a, long b)
+    {
+        long factor = 10;
+        while (factor <= b)
+        {
+            factor *= 10;
+        }
+        return a * factor + b;
+    }
+    
+    @Test
+    public void testDoubleScans()
+    {
+        double source[] = { 3, 1, 4, 1, 5, 9, 2, 6 };
+        double inclusive[] = new double[source.length];
+        ParallelScans.inclusiveScan(4, executorService, source, inclusive, 
+            Math::max);
+        assertArrayEquals(new double[] { 
+            3, 3, 4, 4, 5, 9, 9, 9 }, inclusive, 0.0);
+        double exclusive[] = new double[source.length];
+        ParallelScans.exclusiveScan(4, executorService, source, exclusive, 
+            0.0, Double::sum);
+        assertArrayEquals(new double[] { 
+            0, 3, 4, 8, 9, 14, 23, 25 }, exclusive, 0.0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testTargetTooShort()
+    {
+        ParallelScans.inclusiveScan(2, executorService, 
+            new int[4], new int[3], Integer::sum);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism()
+    {
+        ParallelScans.exclusiveScan(0, executorService, 
+            new long[1], new long[1], 0L, Long::sum);
+    }
+}
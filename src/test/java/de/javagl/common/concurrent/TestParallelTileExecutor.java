@@ -0,0 +1,138 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestParallelTileExecutor
+{
+    private ExecutorService executorService;
+    
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executorService.shutdown();
+    }
+    
+    @Test
+    public void testAllCellsAreProcessedOnce2D()
+    {
+        // Use an offset that exceeds the range of int
+        long offset = 3_000_000_000L;
+        int sizeX = 23;
+        int sizeY = 17;
+        AtomicIntegerArray counts = new AtomicIntegerArray(sizeX * sizeY);
+        ParallelTileExecutor.execute(3, executorService, 
+            offset, offset, offset + sizeX, offset + sizeY, 4, 5, 
+            (taskIndex, minX, minY, maxX, maxY) -> 
+        {
+            assertTrue(taskIndex >= 0 && taskIndex < 3);
+            assertTrue(maxX - minX <= 4);
+            assertTrue(maxY - minY <= 5);
+            for (long y = minY; y < maxY; y++)
+            {
+                for (long x = minX; x < maxX; x++)
+                {
+                    int index = (int) ((y - offset) * sizeX + (x - offset));
+                    counts.incrementAndGet(index);
+                }
+            }
+        });
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+    
+    @Test
+    public void testExtremeBounds()
+    {
+        // The range of the x-coordinates exceeds the range of int, and 
+        // the y-coordinates are close to the maximum long value
+        long minX = Integer.MIN_VALUE;
+        long maxX = Integer.MAX_VALUE;
+        long minY = Long.MAX_VALUE - 10;
+        long maxY = Long.MAX_VALUE;
+        AtomicLong coveredX = new AtomicLong();
+        AtomicLong coveredY = new AtomicLong();
+        ParallelTileExecutor.execute(2, executorService, 
+            minX, minY, maxX, maxY, Integer.MAX_VALUE, 4, 
+            (taskIndex, tileMinX, tileMinY, tileMaxX, tileMaxY) -> 
+        {
+            assertTrue(tileMinX >= minX && tileMaxX <= maxX);
+            assertTrue(tileMinY >= minY && tileMaxY <= maxY);
+            assertTrue(tileMinX < tileMaxX);
+            assertTrue(tileMinY < tileMaxY);
+            if (tileMinY == minY)
+            {
+                coveredX.addAndGet(tileMaxX - tileMinX);
+            }
+            if (tileMinX == minX)
+            {
+                coveredY.addAndGet(tileMaxY - tileMinY);
+            }
+        });
+        assertEquals(maxX - minX, coveredX.get());
+        assertEquals(maxY - minY, coveredY.get());
+    }
+    
+    @Test
+    public void testAllCellsAreProcessedOnce3D()
+    {
+        int sizeX = 7;
+        int sizeY = 9;
+        int sizeZ = 11;
+        AtomicIntegerArray counts = 
+            new AtomicIntegerArray(sizeX * sizeY * sizeZ);
+        ParallelTileExecutor.execute(4, executorService, 
+            0, 0, 0, sizeX, sizeY, sizeZ, 2, 3, 4, 
+            (taskIndex, minX, minY, minZ, maxX, maxY, maxZ) -> 
+        {
+            for (long z = minZ; z < maxZ; z++)
+            {
+                for (long y = minY; y < maxY; y++)
+                {
+                    for (long x = minX; x < maxX; x++)
+                    {
+                        int index = (int) ((z * sizeY + y) * sizeX + x);
+                        counts.incrementAndGet(index);
+                    }
+                }
+            }
+        });
+        for (int i = 0; i < counts.length(); i++)
+        {
+            assertEquals(1, counts.get(i));
+        }
+    }
+    
+    @Test
+    public void testEmptyIndexSpace()
+    {
+        ParallelTileExecutor.execute(4, executorService, 0, 0, 0, 10, 
+            (taskIndex, minX, minY, maxX, maxY) -> 
+        {
+            throw new AssertionError("Should not be called");
+        });
+    }
+}
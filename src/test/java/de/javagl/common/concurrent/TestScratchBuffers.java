@@ -0,0 +1,91 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestScratchBuffers
+{
+    @Test
+    public void testArraysAreReused()
+    {
+        ScratchBuffers scratch = new ScratchBuffers(2);
+        double d0[] = scratch.getDoubles(0, 10);
+        assertTrue(d0.length >= 10);
+        assertSame(d0, scratch.getDoubles(0, 5));
+        double d1[] = scratch.getDoubles(0, 11);
+        assertTrue(d1.length >= 11);
+        assertSame(d1, scratch.getDoubles(0, 11));
+        assertTrue(scratch.getDoubles(1, 1) != d1);
+        
+        int i0[] = scratch.getInts(1, 100);
+        assertSame(i0, scratch.getInts(1, 100));
+    }
+    
+    @Test
+    public void testByteBuffer()
+    {
+        ScratchBuffers scratch = new ScratchBuffers(1, true);
+        ByteBuffer b0 = scratch.getByteBuffer(0, 16);
+        assertTrue(b0.isDirect());
+        assertEquals(0, b0.position());
+        assertEquals(16, b0.limit());
+        b0.order(ByteOrder.LITTLE_ENDIAN);
+        b0.putInt(123);
+        ByteBuffer b1 = scratch.getByteBuffer(0, 8);
+        assertSame(b0, b1);
+        assertEquals(0, b1.position());
+        assertEquals(8, b1.limit());
+        ByteBuffer b2 = scratch.getByteBuffer(0, 1000);
+        assertEquals(1000, b2.limit());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, b2.order());
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidTaskIndex()
+    {
+        ScratchBuffers scratch = new ScratchBuffers(2);
+        scratch.getInts(2, 1);
+    }
+    
+    @Test
+    public void testWithParallelRangeExecutor()
+    {
+        int parallelism = 4;
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ScratchBuffers scratch = new ScratchBuffers(parallelism);
+        DoubleAdder sum = new DoubleAdder();
+        for (int iteration = 0; iteration < 10; iteration++)
+        {
+            ParallelRangeExecutor.execute(parallelism, executorService, 
+                0, 1000, (taskIndex, min, max) -> 
+            {
+                double temp[] = scratch.getDoubles(taskIndex, max - min);
+                for (int i = min; i < max; i++)
+                {
+                    temp[i - min] = i;
+                }
+                for (int i = 0; i < max - min; i++)
+                {
+                    sum.add(temp[i]);
+                }
+            });
+        }
+        executorService.shutdown();
+        assertEquals(10 * 999 * 1000 / 2.0, sum.sum(), 0.0);
+    }
+}
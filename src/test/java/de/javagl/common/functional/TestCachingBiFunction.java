@@ -0,0 +1,277 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestCachingBiFunction
+{
+    private static BiFunction<Integer, Integer, Integer> counting(
+        AtomicInteger counter)
+    {
+        return (t, u) -> 
+        {
+            counter.incrementAndGet();
+            return t * 1000 + u;
+        };
+    }
+    
+    @Test
+    public void testUnbounded()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(counting(calls));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(Integer.valueOf(i * 1000 + 1), f.apply(i, 1));
+            assertEquals(Integer.valueOf(i * 1000 + 1), f.apply(i, 1));
+        }
+        assertEquals(100, calls.get());
+        assertEquals(100, f.size());
+        f.clear();
+        assertEquals(0, f.size());
+    }
+    
+    @Test
+    public void testLru()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), 2, EvictionPolicy.LRU);
+        f.apply(1, 0);
+        f.apply(2, 0);
+        f.apply(1, 0);
+        f.apply(3, 0); // Evicts 2
+        assertEquals(3, calls.get());
+        assertEquals(2, f.size());
+        f.apply(1, 0);
+        assertEquals(3, calls.get());
+        f.apply(2, 0);
+        assertEquals(4, calls.get());
+    }
+    
+    @Test
+    public void testLfu()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), 2, EvictionPolicy.LFU);
+        f.apply(1, 0);
+        f.apply(1, 0);
+        f.apply(1, 0);
+        f.apply(2, 0);
+        f.apply(2, 0);
+        f.apply(3, 0); // Evicts 2, which is used less frequently than 1
+        f.apply(3, 0);
+        f.apply(3, 0);
+        f.apply(3, 0);
+        f.apply(4, 0); // Evicts 1
+        assertEquals(4, calls.get());
+        assertEquals(2, f.size());
+        f.apply(3, 0);
+        assertEquals(4, calls.get());
+        f.apply(1, 0);
+        assertEquals(5, calls.get());
+    }
+    
+    @Test
+    public void testTinyLfuResistsScans()
+    {
+        int maximumSize = 100;
+        double lruHitRate = hitRateWithScans(EvictionPolicy.LRU, maximumSize);
+        double tinyLfuHitRate = 
+            hitRateWithScans(EvictionPolicy.TINY_LFU, maximumSize);
+        assertTrue(tinyLfuHitRate > lruHitRate);
+    }
+    
+    @Test
+    public void testTinyLfuWithUnboundedSize()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), Long.MAX_VALUE, EvictionPolicy.TINY_LFU);
+        for (int i = 0; i < 10000; i++)
+        {
+            f.apply(i, 0);
+            f.apply(i, 0);
+        }
+        assertEquals(10000, calls.get());
+        assertEquals(10000, f.size());
+    }
+    
+    private static double hitRateWithScans(
+        EvictionPolicy policy, int maximumSize)
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), maximumSize, policy);
+        Random random = new Random(0);
+        int numAccesses = 100000;
+        int scanKey = 1000000;
+        for (int i = 0; i < numAccesses; i++)
+        {
+            if (random.nextInt(4) == 0)
+            {
+                f.apply(scanKey++, 0);
+            }
+            else
+            {
+                f.apply(random.nextInt(maximumSize / 2), 0);
+            }
+            assertTrue(f.size() <= maximumSize);
+        }
+        return 1.0 - (double) calls.get() / numAccesses;
+    }
+    
+    @Test
+    public void testNullResultsAreCached()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<String, String, String> f = 
+            new CachingBiFunction<String, String, String>((t, u) -> 
+            {
+                calls.incrementAndGet();
+                return null;
+            });
+        assertEquals(null, f.apply("a", null));
+        assertEquals(null, f.apply("a", null));
+        assertEquals(null, f.apply(null, "a"));
+        assertEquals(2, calls.get());
+    }
+    
+    @Test
+    public void testManyKeys()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(counting(calls));
+        for (int t = 0; t < 100; t++)
+        {
+            for (int u = 0; u < 100; u++)
+            {
+                assertEquals(Integer.valueOf(t * 1000 + u), f.apply(t, u));
+            }
+        }
+        for (int t = 0; t < 100; t++)
+        {
+            for (int u = 0; u < 100; u++)
+            {
+                assertEquals(Integer.valueOf(t * 1000 + u), f.apply(t, u));
+            }
+        }
+        assertEquals(10000, calls.get());
+        assertEquals(10000, f.size());
+    }
+    
+    @Test
+    public void testStats()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), 2, EvictionPolicy.LRU);
+        f.apply(1, 0);
+        f.apply(1, 0);
+        f.apply(2, 0);
+        f.apply(3, 0);
+        f.apply(3, 0);
+        f.apply(3, 0);
+        CacheStats stats = f.getStats();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(3, stats.getLoadCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(2, stats.getSize());
+        assertEquals(0.5, stats.getHitRate(), 0.0);
+        assertTrue(stats.getAverageLoadTime() >= 0.0);
+    }
+    
+    @Test
+    public void testExpireAfterWrite() throws InterruptedException
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), Long.MAX_VALUE, EvictionPolicy.LRU, 
+                ValueStrength.STRONG, 50, 0, TimeUnit.MILLISECONDS);
+        f.apply(1, 0);
+        f.apply(2, 0);
+        f.apply(1, 0);
+        assertEquals(2, calls.get());
+        Thread.sleep(100);
+        f.apply(1, 0);
+        assertEquals(3, calls.get());
+        
+        // Writing removed the expired entry for (2,0)
+        assertEquals(1, f.size());
+        assertEquals(2, f.getStats().getEvictionCount());
+    }
+    
+    @Test
+    public void testExpireAfterAccess() throws InterruptedException
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Integer> f = 
+            new CachingBiFunction<Integer, Integer, Integer>(
+                counting(calls), 10, EvictionPolicy.LFU, 
+                ValueStrength.STRONG, 0, 200, TimeUnit.MILLISECONDS);
+        f.apply(1, 0);
+        for (int i = 0; i < 5; i++)
+        {
+            Thread.sleep(50);
+            f.apply(1, 0);
+        }
+        assertEquals(1, calls.get());
+        Thread.sleep(300);
+        f.apply(1, 0);
+        assertEquals(2, calls.get());
+    }
+    
+    @Test
+    public void testWeakValues() throws InterruptedException
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingBiFunction<Integer, Integer, Object> f = 
+            new CachingBiFunction<Integer, Integer, Object>((t, u) -> 
+            {
+                calls.incrementAndGet();
+                return new Object();
+            }, Long.MAX_VALUE, EvictionPolicy.LRU, 
+            ValueStrength.WEAK, 0, 0, TimeUnit.SECONDS);
+        Object value = f.apply(1, 0);
+        assertTrue(value == f.apply(1, 0));
+        assertEquals(1, calls.get());
+        value = null;
+        for (int i = 0; i < 10 && calls.get() == 1; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+            f.apply(1, 0);
+        }
+        assertEquals(2, calls.get());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaximumSize()
+    {
+        new CachingBiFunction<Integer, Integer, Integer>(
+            (t, u) -> t, 0, EvictionPolicy.LRU);
+    }
+}
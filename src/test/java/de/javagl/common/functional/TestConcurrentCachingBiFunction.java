@@ -0,0 +1,192 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestConcurrentCachingBiFunction
+{
+    @Test
+    public void testSingleFlight() throws Exception
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentCachingBiFunction<Integer, Integer, Integer> f = 
+            new ConcurrentCachingBiFunction<Integer, Integer, Integer>(
+                (t, u) -> 
+            {
+                calls.incrementAndGet();
+                await(release);
+                return t + u;
+            });
+        int numThreads = 8;
+        ExecutorService executorService = 
+            Executors.newFixedThreadPool(numThreads);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < numThreads; i++)
+        {
+            futures.add(executorService.submit(() -> f.apply(1, 2)));
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Future<Integer> future : futures)
+        {
+            assertEquals(Integer.valueOf(3), future.get());
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1, f.size());
+        CacheStats stats = f.getStats();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(numThreads - 1, stats.getHitCount());
+        assertEquals(1, stats.getLoadCount());
+        assertTrue(stats.getTotalLoadTime() > 0);
+    }
+    
+    @Test
+    public void testExceptionIsNotCached()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ConcurrentCachingBiFunction<Integer, Integer, Integer> f = 
+            new ConcurrentCachingBiFunction<Integer, Integer, Integer>(
+                (t, u) -> 
+            {
+                if (calls.incrementAndGet() == 1)
+                {
+                    throw new IllegalStateException("Expected");
+                }
+                return t + u;
+            });
+        try
+        {
+            f.apply(1, 2);
+            assertTrue("Expected exception", false);
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+        assertEquals(0, f.size());
+        assertEquals(Integer.valueOf(3), f.apply(1, 2));
+        assertEquals(2, calls.get());
+    }
+    
+    @Test(timeout = 5000)
+    public void testCheckedExceptionIsNotCached()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        ConcurrentCachingBiFunction<Integer, Integer, Integer> f = 
+            new ConcurrentCachingBiFunction<Integer, Integer, Integer>(
+                (t, u) -> 
+            {
+                if (calls.incrementAndGet() == 1)
+                {
+                    throwUnchecked(new Exception("Expected"));
+                }
+                return t + u;
+            });
+        try
+        {
+            f.apply(1, 2);
+            assertTrue("Expected exception", false);
+        }
+        catch (Exception e)
+        {
+            assertEquals(Exception.class, e.getClass());
+        }
+        assertEquals(0, f.size());
+        assertEquals(Integer.valueOf(3), f.apply(1, 2));
+        assertEquals(2, calls.get());
+    }
+    
+    @Test(timeout = 5000)
+    public void testRecursiveCall()
+    {
+        AtomicReference<BiFunction<Integer, Integer, Integer>> reference =
+            new AtomicReference<BiFunction<Integer, Integer, Integer>>();
+        ConcurrentCachingBiFunction<Integer, Integer, Integer> f = 
+            new ConcurrentCachingBiFunction<Integer, Integer, Integer>(
+                (t, u) -> t == 0 ? u : reference.get().apply(t - 1, u) + 1);
+        reference.set(f);
+        assertEquals(Integer.valueOf(5), f.apply(3, 2));
+        assertEquals(4, f.size());
+        
+        // Computing the value for (7, 2) calls f.apply(7, 2) again
+        reference.set((t, u) -> f.apply(t + 1, u));
+        try
+        {
+            f.apply(7, 2);
+            assertTrue("Expected exception", false);
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+        assertEquals(4, f.size());
+    }
+    
+    @Test
+    public void testBounded() throws InterruptedException
+    {
+        int maximumSize = 100;
+        ConcurrentCachingBiFunction<Integer, Integer, Integer> f = 
+            new ConcurrentCachingBiFunction<Integer, Integer, Integer>(
+                (t, u) -> t * u, maximumSize, EvictionPolicy.TINY_LFU);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++)
+        {
+            final int offset = i;
+            executorService.execute(() -> 
+            {
+                for (int j = 0; j < 10000; j++)
+                {
+                    int t = (j * 31 + offset) % 500;
+                    assertEquals(Integer.valueOf(t * 3), f.apply(t, 3));
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(f.size() <= maximumSize);
+        f.clear();
+        assertEquals(0, f.size());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> void throwUnchecked(Throwable t) 
+        throws E
+    {
+        throw (E) t;
+    }
+    
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
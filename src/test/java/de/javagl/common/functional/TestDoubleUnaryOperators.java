@@ -0,0 +1,226 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestDoubleUnaryOperators
+{
+    private static double[] createInput(int n)
+    {
+        double input[] = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            input[i] = Math.sin(i * 0.1) * 10.0;
+        }
+        return input;
+    }
+    
+    private static void assertApplied(DoubleUnaryOperator operator,
+        double source[], double target[])
+    {
+        for (int i = 0; i < source.length; i++)
+        {
+            assertEquals(operator.applyAsDouble(source[i]), target[i], 0.0);
+        }
+    }
+    
+    @Test
+    public void testApplyKnownOperators()
+    {
+        double source[] = createInput(1000);
+        DoubleUnaryOperator operators[] = 
+        {
+            DoubleUnaryOperators.affine(2.5, -1.0),
+            DoubleUnaryOperators.interpolate(-3.0, 5.0),
+            DoubleUnaryOperators.interpolate(-10.0, 10.0, 0.0, 255.0),
+            DoubleUnaryOperators.clamp(
+                DoubleUnaryOperators.affine(2.0, 1.0), -5.0, 5.0),
+            DoubleUnaryOperators.clamp(DoubleUnaryOperators.interpolate(
+                -10.0, 10.0, 0.0, 255.0), 20.0, 200.0),
+            DoubleUnaryOperators.clamp(DoubleUnaryOperators.clamp(
+                DoubleUnaryOperators.affine(2.0, 1.0), -5.0, 5.0), -1.0, 7.0),
+            DoubleUnaryOperators.clamp(x -> x * x, 0.0, 50.0),
+            x -> Math.exp(x * 0.1)
+        };
+        for (DoubleUnaryOperator operator : operators)
+        {
+            double target[] = new double[source.length];
+            DoubleUnaryOperators.apply(operator, source, target);
+            assertApplied(operator, source, target);
+        }
+    }
+    
+    @Test
+    public void testApplyRangeInPlace()
+    {
+        double source[] = createInput(100);
+        double array[] = source.clone();
+        DoubleUnaryOperator operator = DoubleUnaryOperators.affine(3.0, 1.0);
+        DoubleUnaryOperators.apply(operator, array, array, 10, 20);
+        for (int i = 0; i < source.length; i++)
+        {
+            double expected = i >= 10 && i < 20 ? 
+                operator.applyAsDouble(source[i]) : source[i];
+            assertEquals(expected, array[i], 0.0);
+        }
+    }
+    
+    @Test
+    public void testApplyBuffers()
+    {
+        int n = 3000;
+        double source[] = createInput(n);
+        DoubleUnaryOperator operator = 
+            DoubleUnaryOperators.interpolate(-10.0, 10.0, 0.0, 1.0);
+        
+        DoubleBuffer heapTarget = DoubleBuffer.allocate(n + 5);
+        heapTarget.position(5);
+        DoubleUnaryOperators.apply(
+            operator, DoubleBuffer.wrap(source), heapTarget);
+        assertEquals(5, heapTarget.position());
+        
+        DoubleBuffer directSource = ByteBuffer.allocateDirect(n * 8)
+            .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        directSource.put(source).flip();
+        DoubleBuffer directTarget = ByteBuffer.allocateDirect(n * 8)
+            .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        DoubleUnaryOperators.apply(operator, directSource, directTarget);
+        assertEquals(0, directTarget.position());
+        
+        for (int i = 0; i < n; i++)
+        {
+            double expected = operator.applyAsDouble(source[i]);
+            assertEquals(expected, heapTarget.get(5 + i), 0.0);
+            assertEquals(expected, directTarget.get(i), 0.0);
+        }
+    }
+    
+    @Test
+    public void testApplyOverlappingBuffers()
+    {
+        int n = 3000;
+        double source[] = createInput(n + 10);
+        DoubleUnaryOperator operator = DoubleUnaryOperators.affine(2.0, 1.0);
+        
+        // Target ahead of the source, and target behind the source
+        for (int shift : new int[] { 3, -3 })
+        {
+            double array[] = source.clone();
+            DoubleBuffer sourceBuffer = DoubleBuffer.wrap(array, 5, n);
+            DoubleBuffer targetBuffer = DoubleBuffer.wrap(array, 5 + shift, n);
+            DoubleUnaryOperators.apply(operator, sourceBuffer, targetBuffer);
+            for (int i = 0; i < n; i++)
+            {
+                assertEquals(operator.applyAsDouble(source[5 + i]), 
+                    array[5 + shift + i], 0.0);
+            }
+        }
+    }
+    
+    @Test
+    public void testApplyParallel()
+    {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try
+        {
+            double source[] = createInput(100000);
+            DoubleUnaryOperator operator = DoubleUnaryOperators.clamp(
+                DoubleUnaryOperators.affine(0.5, 0.25), -1.0, 1.0);
+            double target[] = new double[source.length];
+            DoubleUnaryOperators.applyParallel(
+                4, executorService, operator, source, target);
+            assertApplied(operator, source, target);
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+    
+    @Test(expected = ArithmeticException.class)
+    public void testApplyParallelPassesExceptions()
+    {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try
+        {
+            double source[] = createInput(1000);
+            DoubleUnaryOperators.applyParallel(4, executorService, x -> 
+            {
+                throw new ArithmeticException();
+            }, source, source);
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+    
+    @Test
+    public void testApplyParallelWhenInterrupted() throws Exception
+    {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Thread callingThread = Thread.currentThread();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try
+        {
+            DoubleUnaryOperators.applyParallel(2, executorService, x -> 
+            {
+                try
+                {
+                    if (Thread.currentThread() != callingThread)
+                    {
+                        started.countDown();
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    else
+                    {
+                        started.await(10, TimeUnit.SECONDS);
+                        callingThread.interrupt();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return x;
+            }, new double[2], new double[2]);
+            fail("Expected a CancellationException");
+        }
+        catch (CancellationException e)
+        {
+            assertTrue(Thread.interrupted());
+        }
+        finally
+        {
+            release.countDown();
+            executorService.shutdown();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyWithShortTarget()
+    {
+        DoubleUnaryOperators.apply(DoubleUnaryOperators.affine(1.0, 0.0), 
+            new double[4], new double[3]);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestPrimitiveCaching
+{
+    @Test
+    public void testDoubleUnaryOperator()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingDoubleUnaryOperator f = new CachingDoubleUnaryOperator(x -> 
+        {
+            calls.incrementAndGet();
+            return x * x;
+        });
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(i * i * 0.25, f.applyAsDouble(i * 0.5), 0.0);
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(i * i * 0.25, f.applyAsDouble(i * 0.5), 0.0);
+        }
+        assertEquals(Double.NaN, f.applyAsDouble(Double.NaN), 0.0);
+        assertEquals(Double.NaN, f.applyAsDouble(Double.NaN), 0.0);
+        assertEquals(1001, calls.get());
+        assertEquals(1001, f.size());
+    }
+    
+    @Test
+    public void testQuantizedDoubleUnaryOperator()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingDoubleUnaryOperator f = new CachingDoubleUnaryOperator(x -> 
+        {
+            calls.incrementAndGet();
+            return x;
+        }, 0.1, 1000);
+        assertEquals(0.5, f.applyAsDouble(0.49), 1e-12);
+        assertEquals(0.5, f.applyAsDouble(0.52), 1e-12);
+        assertEquals(1, calls.get());
+        assertEquals(Double.POSITIVE_INFINITY, 
+            f.applyAsDouble(Double.POSITIVE_INFINITY), 0.0);
+        assertEquals(1e300, f.applyAsDouble(1e300), 0.0);
+        assertEquals(3, calls.get());
+        assertEquals(1, f.size());
+    }
+    
+    @Test
+    public void testMaximumSize()
+    {
+        CachingDoubleUnaryOperator f = 
+            new CachingDoubleUnaryOperator(x -> x, 0.0, 10);
+        for (int i = 0; i < 100; i++)
+        {
+            f.applyAsDouble(i);
+            assertEquals(i % 10 + 1, f.size());
+        }
+    }
+    
+    @Test
+    public void testIntFunction()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        CachingIntFunction<String> f = new CachingIntFunction<String>(i -> 
+        {
+            calls.incrementAndGet();
+            return i == 0 ? null : String.valueOf(i);
+        });
+        for (int i = -500; i < 500; i++)
+        {
+            assertEquals(i == 0 ? null : String.valueOf(i), f.apply(i));
+        }
+        for (int i = -500; i < 500; i++)
+        {
+            assertEquals(i == 0 ? null : String.valueOf(i), f.apply(i));
+        }
+        assertNull(f.apply(0));
+        assertEquals(1000, calls.get());
+        f.clear();
+        assertEquals(0, f.size());
+    }
+}
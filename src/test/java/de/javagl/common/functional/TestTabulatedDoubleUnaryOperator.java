@@ -0,0 +1,110 @@
+/*
+ * www.javagl.de - Common
+ *
+ * Copyright (c) 2012-2020 Marco Hutter - http://www.javagl.de
+ */
+package de.javagl.common.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestTabulatedDoubleUnaryOperator
+{
+    @Test
+    public void testUniformWithNumSamples()
+    {
+        TabulatedDoubleUnaryOperator f = 
+            DoubleUnaryOperators.tabulate(x -> 2 * x + 1, -1.0, 3.0, 5);
+        assertEquals(5, f.getNumSamples());
+        assertEquals(0.0, f.getMaximumError(), 1e-12);
+        for (int i = 0; i <= 100; i++)
+        {
+            double x = -1.0 + i * 0.04;
+            assertEquals(2 * x + 1, f.applyAsDouble(x), 1e-12);
+        }
+        assertEquals(-1.0, f.applyAsDouble(-1.0), 0.0);
+        assertEquals(7.0, f.applyAsDouble(3.0), 0.0);
+    }
+    
+    @Test
+    public void testUniformWithMaximumError()
+    {
+        TabulatedDoubleUnaryOperator f = 
+            DoubleUnaryOperators.tabulate(Math::sin, 0.0, 10.0, 1e-6);
+        assertTrue(f.getMaximumError() <= 1e-6);
+        assertMaximumError(Math::sin, f, 2e-6);
+    }
+    
+    @Test
+    public void testAdaptive()
+    {
+        DoubleUnaryOperator g = x -> Math.exp(x);
+        TabulatedDoubleUnaryOperator uniform = 
+            DoubleUnaryOperators.tabulate(g, 0.0, 8.0, 1e-4);
+        TabulatedDoubleUnaryOperator adaptive = 
+            DoubleUnaryOperators.tabulateAdaptive(g, 0.0, 8.0, 1e-4);
+        assertTrue(adaptive.getMaximumError() <= 1e-4);
+        assertMaximumError(g, adaptive, 2e-4);
+        assertTrue(adaptive.getNumSamples() < uniform.getNumSamples());
+    }
+    
+    @Test(timeout = 10000)
+    public void testUnreachableMaximumError()
+    {
+        TabulatedDoubleUnaryOperator uniform = 
+            DoubleUnaryOperators.tabulate(Math::sin, 0.0, 10.0, 1e-20);
+        assertTrue(uniform.getNumSamples() 
+            <= TabulatedDoubleUnaryOperator.MAXIMUM_SAMPLES);
+        assertTrue(uniform.getMaximumError() > 1e-20);
+        assertMaximumError(Math::sin, uniform, 1e-9);
+        
+        TabulatedDoubleUnaryOperator adaptive = 
+            DoubleUnaryOperators.tabulateAdaptive(Math::sin, 0.0, 10.0, 1e-20);
+        assertTrue(adaptive.getNumSamples() 
+            <= TabulatedDoubleUnaryOperator.MAXIMUM_SAMPLES);
+        assertTrue(adaptive.getMaximumError() > 1e-20);
+        assertMaximumError(Math::sin, adaptive, 1e-9);
+    }
+    
+    @Test
+    public void testOutsideOfDomain()
+    {
+        TabulatedDoubleUnaryOperator f = 
+            DoubleUnaryOperators.tabulateAdaptive(x -> x * x, 0.0, 1.0, 0.1);
+        assertEquals(4.0, f.applyAsDouble(2.0), 0.0);
+        assertEquals(1.0, f.applyAsDouble(-1.0), 0.0);
+        assertEquals(Double.NaN, f.applyAsDouble(Double.NaN), 0.0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDomain()
+    {
+        DoubleUnaryOperators.tabulate(x -> x, 1.0, 1.0, 10);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaximumError()
+    {
+        DoubleUnaryOperators.tabulateAdaptive(x -> x, 0.0, 1.0, 0.0);
+    }
+    
+    private static void assertMaximumError(DoubleUnaryOperator expected, 
+        DoubleUnaryOperator actual, double maximumError)
+    {
+        TabulatedDoubleUnaryOperator t = (TabulatedDoubleUnaryOperator) actual;
+        double min = t.getMinimum();
+        double max = t.getMaximum();
+        int n = 10007;
+        for (int i = 0; i <= n; i++)
+        {
+            double x = min + (max - min) * i / n;
+            assertEquals(expected.applyAsDouble(x), 
+                actual.applyAsDouble(x), maximumError);
+        }
+    }
+}